@@ -3,9 +3,11 @@ package dev.jettro.knowledge;
 import com.embabel.dice.web.rest.DiceRestConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 @Import(DiceRestConfiguration.class)
 public class MainApplication {
     public static void main(String[] args) {
@@ -0,0 +1,44 @@
+package dev.jettro.knowledge.chat;
+
+import com.embabel.agent.api.channel.OutputChannelEvent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A frame of an assistant response that is still being generated. Frames of the same response share the stream ID
+ * and are numbered by sequence, the {@code delta} is the text that was generated since the previous frame. The
+ * complete response follows as a regular message event.
+ */
+public class AssistantDeltaOutputChannelEvent implements OutputChannelEvent {
+
+    private final String processId;
+    private final String streamId;
+    private final int sequence;
+    private final String delta;
+
+    public AssistantDeltaOutputChannelEvent(String processId, String streamId, int sequence, String delta) {
+        this.processId = processId;
+        this.streamId = streamId;
+        this.sequence = sequence;
+        this.delta = delta;
+    }
+
+    @NotNull
+    @Override
+    public String getProcessId() {
+        return this.processId;
+    }
+
+    @NotNull
+    public String getStreamId() {
+        return this.streamId;
+    }
+
+    public int getSequence() {
+        return this.sequence;
+    }
+
+    @NotNull
+    public String getDelta() {
+        return this.delta;
+    }
+}
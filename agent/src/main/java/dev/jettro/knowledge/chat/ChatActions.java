@@ -5,13 +5,14 @@ import com.embabel.agent.api.annotation.EmbabelComponent;
 import com.embabel.agent.api.common.ActionContext;
 import com.embabel.agent.api.common.OperationContext;
 import com.embabel.agent.api.tool.Tool;
-import com.embabel.agent.rag.service.SearchOperations;
 import com.embabel.agent.rag.tools.ToolishRag;
+import com.embabel.chat.AssistantMessage;
 import com.embabel.chat.Conversation;
 import com.embabel.chat.UserMessage;
 import com.embabel.dice.agent.Memory;
 import com.embabel.dice.projection.memory.MemoryProjector;
 import com.embabel.dice.proposition.PropositionRepository;
+import dev.jettro.knowledge.search.CachingSearchOperations;
 import dev.jettro.knowledge.security.KnowledgeUser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,22 +27,34 @@ import static dev.jettro.knowledge.chat.model.Roles.CHEAPEST;
 public class ChatActions {
     private static final Logger logger = LoggerFactory.getLogger(ChatActions.class);
 
-    private final ToolishRag toolishRag;
+    private final CachingSearchOperations searchOperations;
     private final ApplicationEventPublisher eventPublisher;
     private final PropositionRepository propositionRepository;
     private final MemoryProjector memoryProjector;
+    private final ModelConcurrencyLimiter concurrencyLimiter;
+    private final TokenStreamForwarder tokenStreamForwarder;
+    private final ResponseStreamingProperties streamingProperties;
+    private final ContextWindowManager contextWindow;
+    private final SemanticResponseCache responseCache;
 
-    public ChatActions(@Qualifier("luceneSearchOperations") SearchOperations searchOperations,
+    public ChatActions(@Qualifier("sourcesSearchOperations") CachingSearchOperations searchOperations,
                        ApplicationEventPublisher eventPublisher,
                        PropositionRepository propositionRepository,
-                       MemoryProjector memoryProjector) {
-        this.toolishRag = new ToolishRag(
-                "sources",
-                "sources for answering user questions",
-                searchOperations);
+                       MemoryProjector memoryProjector,
+                       ModelConcurrencyLimiter concurrencyLimiter,
+                       TokenStreamForwarder tokenStreamForwarder,
+                       ResponseStreamingProperties streamingProperties,
+                       ContextWindowManager contextWindow,
+                       SemanticResponseCache responseCache) {
+        this.searchOperations = searchOperations;
         this.eventPublisher = eventPublisher;
         this.propositionRepository = propositionRepository;
         this.memoryProjector = memoryProjector;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.tokenStreamForwarder = tokenStreamForwarder;
+        this.streamingProperties = streamingProperties;
+        this.contextWindow = contextWindow;
+        this.responseCache = responseCache;
     }
 
     @Action
@@ -61,22 +74,57 @@ public class ChatActions {
         var lastUserMessage = conversation.lastMessageIfBeFromUser();
 
         if (lastUserMessage != null) {
+            // The tools give the model slot of the turn back while they search, and record what they found
+            var retrievals = new TurnRetrievals();
+            var toolishRag = new ToolishRag(
+                    "sources",
+                    "sources for answering user questions",
+                    new ToolSearchOperations(searchOperations, concurrencyLimiter, retrievals));
             var memory = Memory.forContext(user.getCurrentContext())
-                    .withRepository(propositionRepository)
+                    .withRepository(
+                            new ToolPropositionRepository(propositionRepository, concurrencyLimiter, retrievals))
                     .withProjector(memoryProjector);
 
             var tools = new LinkedList<Tool>();
             tools.add(memory);
 
             logger.info("Received user message as last message: {}", lastUserMessage.getContent());
-            var assistantMessage = context.ai()
+            var promptRunner = context.ai()
                     .withLlmByRole(CHEAPEST.name())
                     .withTools(tools)
                     .withReferences(toolishRag) // TODO check if this is still what we need to do in the docs
-                    .withSystemPrompt("You are a helpful assistant. Answer questions concisely. Always address the current user by their name: " + user.getDisplayName() + ".")
-                    .respond(conversation.getMessages());
+                    .withSystemPrompt("You are a helpful assistant. Answer questions concisely. Always address the current user by their name: " + user.getDisplayName() + ".");
+
+            // Recent turns verbatim, older ones as a summary, within the token budget of the role
+            var messages = contextWindow.messagesFor(conversation, CHEAPEST);
+
+            // Questions about the sources that were answered before come from the cache, when it is enabled
+            var cached = responseCache.isEnabled()
+                    ? responseCache.lookup(user, conversation)
+                    : null;
+
+            // Stream the tokens to the client while they are generated, the full message follows when done
+            AssistantMessage assistantMessage;
+            if (cached != null && cached.answer() != null) {
+                logger.info("Answering from the response cache");
+                assistantMessage = new AssistantMessage(cached.answer());
+            } else if (streamingProperties.enabled() && promptRunner.supportsStreaming()) {
+                // Tools called on Reactor threads keep the slot, see ModelConcurrencyLimiter
+                var text = concurrencyLimiter.call(CHEAPEST, () -> tokenStreamForwarder.forward(
+                        promptRunner.stream().generateStream(messages),
+                        context.getProcessContext().getOutputChannel(),
+                        context.getProcessContext().getAgentProcess().getId()));
+                assistantMessage = new AssistantMessage(text);
+            } else {
+                assistantMessage = concurrencyLimiter.call(CHEAPEST,
+                        () -> promptRunner.respond(messages));
+            }
+            if (cached != null) {
+                responseCache.put(cached, assistantMessage.getContent(), retrievals);
+            }
 
             context.sendMessage(conversation.addMessage(assistantMessage));
+            contextWindow.afterTurn(conversation);
 
             eventPublisher.publishEvent(new ConversationAnalysisRequestEvent(this, user, conversation));
         } else {
@@ -7,19 +7,15 @@ import com.embabel.agent.core.Verbosity;
 import com.embabel.agent.rag.ingestion.ContentChunker;
 import com.embabel.agent.rag.ingestion.transform.AddTitlesChunkTransformer;
 import com.embabel.agent.rag.lucene.LuceneSearchOperations;
-import com.embabel.agent.rag.service.NamedEntityDataRepository;
-import com.embabel.agent.rag.service.support.InMemoryNamedEntityDataRepository;
 import com.embabel.chat.Chatbot;
 import com.embabel.chat.agent.AgentProcessChatbot;
 import com.embabel.chat.support.InMemoryConversationFactory;
-import com.embabel.common.ai.model.*;
+import com.embabel.common.ai.model.LlmOptions;
 import com.embabel.dice.common.EntityResolver;
 import com.embabel.dice.common.SchemaAdherence;
 import com.embabel.dice.common.SchemaRegistry;
-import com.embabel.dice.common.resolver.InMemoryEntityResolver;
 import com.embabel.dice.common.support.InMemorySchemaRegistry;
 import com.embabel.dice.incremental.ChunkHistoryStore;
-import com.embabel.dice.incremental.InMemoryChunkHistoryStore;
 import com.embabel.dice.pipeline.PropositionPipeline;
 import com.embabel.dice.projection.memory.MemoryProjector;
 import com.embabel.dice.projection.memory.support.DefaultMemoryProjector;
@@ -28,17 +24,46 @@ import com.embabel.dice.proposition.PropositionRepository;
 import com.embabel.dice.proposition.extraction.LlmPropositionExtractor;
 import com.embabel.dice.proposition.revision.LlmPropositionReviser;
 import com.embabel.dice.proposition.revision.PropositionReviser;
-import com.embabel.dice.proposition.store.InMemoryPropositionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jettro.knowledge.chat.session.ChatEventBus;
+import dev.jettro.knowledge.chat.session.ChatSessionProperties;
+import dev.jettro.knowledge.chat.session.ChatSessionStore;
+import dev.jettro.knowledge.chat.session.FileChatSessionStore;
+import dev.jettro.knowledge.chat.session.InProcessChatEventBus;
+import dev.jettro.knowledge.embedding.EmbeddingServices;
+import dev.jettro.knowledge.entity.EntityStoreProperties;
+import dev.jettro.knowledge.entity.IndexedEntityResolver;
+import dev.jettro.knowledge.entity.PersistentNamedEntityDataRepository;
+import dev.jettro.knowledge.incremental.ChunkHistoryProperties;
+import dev.jettro.knowledge.incremental.FileChunkHistoryStore;
+import dev.jettro.knowledge.lucene.ShardLayout;
+import dev.jettro.knowledge.lucene.ShardedSearchOperations;
+import dev.jettro.knowledge.lucene.SourcesIndex;
+import dev.jettro.knowledge.lucene.SourcesIndexProperties;
+import dev.jettro.knowledge.lucene.SourcesIndexSearcher;
+import dev.jettro.knowledge.lucene.VectorFormatMigration;
 import dev.jettro.knowledge.proposition.Product;
 import dev.jettro.knowledge.proposition.ProgrammingLanguage;
+import dev.jettro.knowledge.proposition.store.LucenePropositionRepository;
+import dev.jettro.knowledge.proposition.store.PropositionStoreProperties;
+import dev.jettro.knowledge.search.CachingSearchOperations;
+import dev.jettro.knowledge.search.HybridSearchOperations;
+import dev.jettro.knowledge.search.HybridSearchProperties;
+import dev.jettro.knowledge.search.RescoringSearchOperations;
+import dev.jettro.knowledge.search.SearchCacheProperties;
+import dev.jettro.knowledge.search.TermProximityReranker;
 import dev.jettro.knowledge.security.KnowledgeUser;
+import dev.jettro.knowledge.startup.StartupProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.lucene.codecs.Codec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
-import java.nio.file.Path;
+import java.util.stream.IntStream;
+
 
 import static dev.jettro.knowledge.chat.model.Roles.FAST;
 import static dev.jettro.knowledge.chat.model.Roles.STANDARD;
@@ -54,22 +79,98 @@ public class ChatConfiguration {
                 new Verbosity().withShowPrompts(true));
     }
 
+    /**
+     * Conversations are stored in files, so any instance can continue them. Replace this bean to use a database.
+     */
     @Bean
-    LuceneSearchOperations luceneSearchOperations(ModelProvider modelProvider) {
-        return LuceneSearchOperations
-                .withName("sources")
-                .withEmbeddingService(modelProvider.getEmbeddingService(ByRoleModelSelectionCriteria.Companion.byRole(FAST.name())))
-                .withChunkerConfig(new ContentChunker.Config(800, 100, 100))
-                .withChunkTransformer(AddTitlesChunkTransformer.INSTANCE)
-                .withIndexPath(Path.of("./.lucene-index"))
-                .buildAndLoadChunks();
+    ChatSessionStore chatSessionStore(ChatSessionProperties properties, ObjectMapper objectMapper) {
+        return new FileChatSessionStore(properties, objectMapper);
     }
 
+    /**
+     * Output events only reach clients connected to this instance. Replace this bean with a broker backed bus to
+     * route them between instances.
+     */
     @Bean
-    PropositionRepository propositionRepository(ModelProvider modelProvider) {
-        return new InMemoryPropositionRepository(
-                modelProvider.getEmbeddingService(ByRoleModelSelectionCriteria.Companion.byRole(FAST.name()))
-        );
+    ChatEventBus chatEventBus() {
+        return new InProcessChatEventBus();
+    }
+
+    /**
+     * Opening the index loads its chunks, with a lazy index this runs in the background and chat requests are
+     * refused until it is done. Every shard is a separate Lucene index, the shards are loaded in parallel.
+     * <p>
+     * The builder of {@link LuceneSearchOperations} creates its own writer config and has no option for the codec, so
+     * a quantized vector format can only reach the writers of the sources through the default codec of the JVM. This
+     * is safe because every other index writer of the application, those of the propositions, the format migration
+     * and the format report, sets its codec explicitly, and readers find the format by the name that is recorded in
+     * the index, whatever the default codec is. Code that adds a writer must set its codec as well.
+     * </p>
+     */
+    @Bean
+    SourcesIndex sourcesIndex(EmbeddingServices embeddingServices,
+                              SourcesIndexProperties indexProperties,
+                              SourcesIndexSearcher indexSearcher,
+                              StartupProperties startupProperties) {
+        var index = new SourcesIndex(() -> {
+            ShardLayout.checkOrWrite(indexProperties);
+            VectorFormatMigration.migrateIfNeeded(indexProperties);
+            if (indexProperties.vectorFormat().isQuantized()) {
+                logger.info("Storing vectors of the sources index as {}", indexProperties.vectorFormat());
+                Codec.setDefault(indexProperties.vectorFormat()
+                        .codec(indexProperties.maxConn(), indexProperties.beamWidth()));
+            }
+            var shardPaths = indexProperties.shardPaths();
+            var shards = IntStream.range(0, shardPaths.size()).parallel()
+                    .mapToObj(shard -> LuceneSearchOperations
+                            .withName(shardPaths.size() == 1 ? "sources" : "sources-" + shard)
+                            .withEmbeddingService(embeddingServices.byRole(FAST))
+                            .withChunkerConfig(new ContentChunker.Config(800, 100, 100))
+                            .withChunkTransformer(AddTitlesChunkTransformer.INSTANCE)
+                            .withIndexPath(shardPaths.get(shard))
+                            .buildAndLoadChunks())
+                    .toList();
+            return new ShardedSearchOperations(shards, indexSearcher, embeddingServices.byRole(FAST));
+        });
+        if (startupProperties.lazyIndex()) {
+            index.open();
+        } else {
+            index.operations();
+        }
+        return index;
+    }
+
+    /**
+     * Search over the sources as the chat tools use it: hybrid BM25 and vector search on the Lucene index, with a
+     * cache in front. Vector hits from a quantized index are rescored with the full precision vectors.
+     */
+    @Bean
+    CachingSearchOperations sourcesSearchOperations(SourcesIndex sourcesIndex,
+                                                    EmbeddingServices embeddingServices,
+                                                    SourcesIndexProperties indexProperties,
+                                                    SourcesIndexSearcher indexSearcher,
+                                                    HybridSearchProperties hybridProperties,
+                                                    SearchCacheProperties cacheProperties,
+                                                    MeterRegistry meterRegistry) {
+        HybridSearchOperations hybrid;
+        if (indexProperties.vectorFormat().isQuantized()) {
+            var rescoring = new RescoringSearchOperations(
+                    sourcesIndex, indexProperties, indexSearcher, embeddingServices.byRole(FAST));
+            hybrid = new HybridSearchOperations(rescoring, hybridProperties, new TermProximityReranker());
+        } else {
+            hybrid = new HybridSearchOperations(sourcesIndex, hybridProperties, new TermProximityReranker());
+        }
+        return new CachingSearchOperations(hybrid, cacheProperties, meterRegistry);
+    }
+
+    /**
+     * Propositions are stored on disk, with a Lucene index per context that is opened on first use.
+     */
+    @Bean
+    LucenePropositionRepository propositionRepository(EmbeddingServices embeddingServices,
+                                                      PropositionStoreProperties properties,
+                                                      ObjectMapper objectMapper) {
+        return new LucenePropositionRepository(properties, embeddingServices.byRole(FAST), objectMapper);
     }
 
     @Bean
@@ -131,21 +232,36 @@ public class ChatConfiguration {
                 .withTemplate("extract_user_propositions");
     }
 
+    /**
+     * Resolves mentions through the name index of the entity store, without calling a model.
+     */
     @Bean
-    EntityResolver entityResolver() {
-        return new InMemoryEntityResolver();
+    EntityResolver entityResolver(PersistentNamedEntityDataRepository namedEntityDataRepository,
+                                  MeterRegistry meterRegistry) {
+        return new IndexedEntityResolver(namedEntityDataRepository, meterRegistry);
     }
 
+    /**
+     * Processed conversation windows are logged to disk, so they are not extracted again after a restart.
+     */
     @Bean
-    ChunkHistoryStore chunkHistoryStore() {
-        return new InMemoryChunkHistoryStore();
+    ChunkHistoryStore chunkHistoryStore(ChunkHistoryProperties properties, ObjectMapper objectMapper) {
+        return new FileChunkHistoryStore(properties, objectMapper);
     }
 
+    /**
+     * Entities are kept in memory with packed embeddings and persisted to an append-only log.
+     */
     @Bean
-    NamedEntityDataRepository namedEntityDataRepository(DataDictionary dataDictionary, ModelProvider modelProvider) {
-        return new InMemoryNamedEntityDataRepository(
+    PersistentNamedEntityDataRepository namedEntityDataRepository(DataDictionary dataDictionary,
+                                                                  EmbeddingServices embeddingServices,
+                                                                  EntityStoreProperties properties,
+                                                                  ObjectMapper objectMapper) {
+        return new PersistentNamedEntityDataRepository(
                 dataDictionary,
-                modelProvider.getEmbeddingService(ByRoleModelSelectionCriteria.Companion.byRole(FAST.name()))
+                embeddingServices.byRole(FAST),
+                properties,
+                objectMapper
         );
     }
 
@@ -0,0 +1,182 @@
+package dev.jettro.knowledge.chat;
+
+import com.embabel.agent.api.common.Ai;
+import com.embabel.agent.api.common.AiBuilder;
+import com.embabel.chat.Conversation;
+import com.embabel.chat.Message;
+import com.embabel.chat.Role;
+import com.embabel.chat.SystemMessage;
+import dev.jettro.knowledge.chat.model.Roles;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static dev.jettro.knowledge.chat.model.Roles.CHEAPEST;
+
+/**
+ * Bounds the conversation history that is sent to the model, so the cost of a turn does not grow with the length of
+ * the conversation.
+ * <p>
+ * The last {@code keepTurns} turns are sent verbatim. Older turns are folded into a rolling summary by the
+ * {@link Roles#CHEAPEST} model, a few turns at a time, after a response was sent. The summary is cached per
+ * conversation, a turn that finds no summary yet sends the older messages verbatim instead. Whatever is sent is cut
+ * down to the token budget of the model role by leaving out the oldest messages, the last message always stays.
+ * </p>
+ */
+@Component
+public class ContextWindowManager {
+    private static final Logger logger = LoggerFactory.getLogger(ContextWindowManager.class);
+
+    private final ContextWindowProperties properties;
+    private final ModelConcurrencyLimiter concurrencyLimiter;
+    private final Ai ai;
+    private final Map<String, Summary> summaries;
+    private final Set<String> folding = ConcurrentHashMap.newKeySet();
+    private final ExecutorService summarizers =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("history-summarizer-", 0).factory());
+    private final DistributionSummary promptTokens;
+    private final Counter droppedMessages;
+
+    public ContextWindowManager(ContextWindowProperties properties,
+                                ModelConcurrencyLimiter concurrencyLimiter,
+                                AiBuilder aiBuilder,
+                                MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.ai = aiBuilder.ai();
+        this.summaries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Summary> eldest) {
+                return size() > properties.maxConversations();
+            }
+        });
+        this.promptTokens = DistributionSummary.builder("knowledge.chat.history.tokens")
+                .description("Estimated tokens of conversation history sent to the model per turn")
+                .register(meterRegistry);
+        this.droppedMessages = Counter.builder("knowledge.chat.history.dropped")
+                .description("Messages left out of the prompt to stay within the token budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The messages to send to the model for the next turn of the conversation.
+     */
+    public List<Message> messagesFor(Conversation conversation, Roles role) {
+        var messages = conversation.getMessages();
+        int verbatimFrom = startOfRecentTurns(messages);
+        var summary = summaries.get(conversation.getId());
+        if (summary != null && summary.coveredMessages() > verbatimFrom) {
+            // The conversation was restored with fewer messages than the summary covers
+            summary = null;
+        }
+
+        var window = new ArrayList<Message>(messages.subList(summary == null ? 0 : summary.coveredMessages(),
+                messages.size()));
+        int budget = properties.budgetFor(role);
+        int tokens = summary == null ? 0 : summary.tokens();
+        for (Message message : window) {
+            tokens += estimateTokens(message.getContent());
+        }
+        while (tokens > budget && window.size() > 1) {
+            tokens -= estimateTokens(window.removeFirst().getContent());
+            droppedMessages.increment();
+        }
+        if (summary != null) {
+            window.addFirst(new SystemMessage("Summary of the earlier conversation:\n" + summary.text()));
+        }
+        promptTokens.record(tokens);
+        return window;
+    }
+
+    /**
+     * Folds turns that left the verbatim window into the summary, in the background. Call after a turn completed.
+     */
+    public void afterTurn(Conversation conversation) {
+        var messages = List.copyOf(conversation.getMessages());
+        int verbatimFrom = startOfRecentTurns(messages);
+        var summary = summaries.get(conversation.getId());
+        int covered = summary == null || summary.coveredMessages() > verbatimFrom ? 0 : summary.coveredMessages();
+        if (countTurns(messages.subList(covered, verbatimFrom)) < properties.foldTurns()) {
+            return;
+        }
+        if (!folding.add(conversation.getId())) {
+            return;
+        }
+        var previous = covered == 0 ? null : summary;
+        summarizers.execute(() -> {
+            try {
+                fold(conversation.getId(), previous, messages.subList(covered, verbatimFrom), verbatimFrom);
+            } catch (RuntimeException e) {
+                logger.warn("Could not summarize the history of conversation {}", conversation.getId(), e);
+            } finally {
+                folding.remove(conversation.getId());
+            }
+        });
+    }
+
+    private void fold(String conversationId, Summary previous, List<Message> messages, int coveredMessages) {
+        var transcript = new StringBuilder();
+        for (Message message : messages) {
+            transcript.append(message.getRole().name().toLowerCase(Locale.ROOT))
+                    .append(": ")
+                    .append(message.getContent())
+                    .append('\n');
+        }
+        var prompt = """
+                Update the summary of a conversation between a user and an assistant with the new messages.
+                Keep facts, names, decisions and open questions, leave out pleasantries.
+                Answer with the summary only, in at most %d words.
+
+                Current summary:
+                %s
+
+                New messages:
+                %s
+                """.formatted(
+                properties.maxSummaryTokens() * 3 / 4,
+                previous == null ? "(none)" : previous.text(),
+                transcript);
+
+        var text = concurrencyLimiter.call(CHEAPEST, () -> ai.withLlmByRole(CHEAPEST.name()).generateText(prompt));
+        summaries.put(conversationId, new Summary(coveredMessages, text, estimateTokens(text)));
+        logger.debug("Folded {} messages into the summary of conversation {}", messages.size(), conversationId);
+    }
+
+    /**
+     * Index of the first message of the last {@code keepTurns} turns, a turn starts with a user message.
+     */
+    private int startOfRecentTurns(List<Message> messages) {
+        int turns = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i).getRole() == Role.USER && ++turns == properties.keepTurns()) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static int countTurns(List<Message> messages) {
+        return (int) messages.stream().filter(message -> message.getRole() == Role.USER).count();
+    }
+
+    private int estimateTokens(String text) {
+        return text == null ? 0 : text.length() / properties.charsPerToken() + 1;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        summarizers.shutdownNow();
+    }
+
+    private record Summary(int coveredMessages, String text, int tokens) {
+    }
+}
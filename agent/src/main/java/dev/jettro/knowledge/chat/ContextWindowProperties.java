@@ -0,0 +1,34 @@
+package dev.jettro.knowledge.chat;
+
+import dev.jettro.knowledge.chat.model.Roles;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Configuration of the conversation history that is sent to the model on every turn.
+ *
+ * @param keepTurns          Number of most recent turns that are always sent verbatim.
+ * @param foldTurns          Number of turns that have to fall out of the verbatim window before they are folded into
+ *                           the summary, so the summary is not rewritten on every turn.
+ * @param maxSummaryTokens   Target length of the rolling summary.
+ * @param tokenBudget        Maximum number of history tokens per model role, the oldest messages are left out first.
+ * @param defaultTokenBudget Budget for roles that are not configured in {@code tokenBudget}.
+ * @param charsPerToken      Characters per token used to estimate the size of a message.
+ * @param maxConversations   Maximum number of cached summaries, the least recently used ones are dropped.
+ */
+@ConfigurationProperties(prefix = "knowledge.chat.context-window")
+public record ContextWindowProperties(
+        @DefaultValue("6") int keepTurns,
+        @DefaultValue("4") int foldTurns,
+        @DefaultValue("400") int maxSummaryTokens,
+        @DefaultValue Map<Roles, Integer> tokenBudget,
+        @DefaultValue("6000") int defaultTokenBudget,
+        @DefaultValue("4") int charsPerToken,
+        @DefaultValue("10000") int maxConversations) {
+
+    public int budgetFor(Roles role) {
+        return tokenBudget.getOrDefault(role, defaultTokenBudget);
+    }
+}
@@ -1,7 +1,6 @@
 package dev.jettro.knowledge.chat;
 
 import com.embabel.agent.core.DataDictionary;
-import com.embabel.agent.rag.service.NamedEntityDataRepository;
 import com.embabel.chat.Message;
 import com.embabel.dice.common.EntityResolver;
 import com.embabel.dice.common.KnownEntity;
@@ -12,63 +11,104 @@ import com.embabel.dice.incremental.proposition.PropositionIncrementalAnalyzer;
 import com.embabel.dice.pipeline.ChunkPropositionResult;
 import com.embabel.dice.pipeline.PropositionPipeline;
 import com.embabel.dice.proposition.EntityMention;
-import com.embabel.dice.proposition.PropositionRepository;
+import com.embabel.dice.proposition.PropositionExtractor;
 import com.embabel.dice.proposition.ReferencesEntities;
+import com.embabel.dice.proposition.revision.PropositionReviser;
+import dev.jettro.knowledge.entity.CachingEntityResolver;
+import dev.jettro.knowledge.entity.EntityResolutionCacheProperties;
+import dev.jettro.knowledge.entity.PersistentNamedEntityDataRepository;
+import dev.jettro.knowledge.proposition.store.LucenePropositionRepository;
 import dev.jettro.knowledge.security.KnowledgeUser;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import static dev.jettro.knowledge.chat.model.Roles.STANDARD;
+
 @Service
 public class ConversationPropositionExtraction {
     private static final Logger logger = LoggerFactory.getLogger(ConversationPropositionExtraction.class);
 
-    private final IncrementalAnalyzer<Message, ChunkPropositionResult> analyzer;
+    // One analyzer per context, so revision only compares new propositions with those of the same context
+    private final Map<String, IncrementalAnalyzer<Message, ChunkPropositionResult>> analyzers =
+            new ConcurrentHashMap<>();
     private final EntityResolver entityResolver;
     private final DataDictionary dataDictionary;
-    private final PropositionRepository propositionRepository;
-    private final NamedEntityDataRepository entityRepository;
+    private final PropositionExtractor propositionExtractor;
+    private final PropositionReviser propositionReviser;
+    private final ChunkHistoryStore chunkHistoryStore;
+    private final LucenePropositionRepository propositionRepository;
+    private final PersistentNamedEntityDataRepository entityRepository;
+    private final EntityResolutionCacheProperties resolutionCacheProperties;
+    private final MeterRegistry meterRegistry;
+    private final ExtractionScheduler extractionScheduler;
+    private final ExtractionTrigger extractionTrigger;
+    private final ExtractionWindowProperties windowProperties;
+    private final ModelConcurrencyLimiter concurrencyLimiter;
+
+    // Resolver per user, so repeated mentions in a conversation are resolved from the user's cache
+    private final Map<String, UserResolver> userResolvers;
 
     public ConversationPropositionExtraction(EntityResolver entityResolver,
                                              DataDictionary dataDictionary,
-                                             PropositionPipeline propositionPipeline,
+                                             PropositionExtractor propositionExtractor,
+                                             PropositionReviser propositionReviser,
                                              ChunkHistoryStore chunkHistoryStore,
-                                             PropositionRepository propositionRepository,
-                                             NamedEntityDataRepository entityRepository) {
+                                             LucenePropositionRepository propositionRepository,
+                                             PersistentNamedEntityDataRepository entityRepository,
+                                             EntityResolutionCacheProperties resolutionCacheProperties,
+                                             MeterRegistry meterRegistry,
+                                             ExtractionScheduler extractionScheduler,
+                                             ExtractionTrigger extractionTrigger,
+                                             ExtractionWindowProperties windowProperties,
+                                             ModelConcurrencyLimiter concurrencyLimiter) {
         this.entityResolver = entityResolver;
         this.dataDictionary = dataDictionary;
+        this.propositionExtractor = propositionExtractor;
+        this.propositionReviser = propositionReviser;
+        this.chunkHistoryStore = chunkHistoryStore;
         this.propositionRepository = propositionRepository;
         this.entityRepository = entityRepository;
-
-        var config = new WindowConfig();
-
-        this.analyzer = new PropositionIncrementalAnalyzer<>(
-                propositionPipeline,
-                chunkHistoryStore,
-                MessageFormatter.INSTANCE,
-                config
-        );
+        this.resolutionCacheProperties = resolutionCacheProperties;
+        this.meterRegistry = meterRegistry;
+        this.extractionScheduler = extractionScheduler;
+        this.extractionTrigger = extractionTrigger;
+        this.windowProperties = windowProperties;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.userResolvers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserResolver> eldest) {
+                return size() > resolutionCacheProperties.maxUsers();
+            }
+        };
+        entityRepository.addDeletionListener(this::invalidateResolutions);
     }
 
     /**
-     * Async event listener for conversation exchanges.
-     * Extracts propositions in a separate thread to avoid blocking chat responses.
+     * Event listener for conversation exchanges.
+     * The {@link ExtractionTrigger} debounces exchanges per conversation, due extractions are handed to the
+     * {@link ExtractionScheduler} to avoid blocking chat responses. A newer exchange in the same conversation replaces
+     * one that is still waiting.
      */
-    @Async
     @EventListener
     public void onConversationExchange(ConversationAnalysisRequestEvent event) {
-        try {
-            extractPropositions(event);
-        } catch (Exception e) {
-            logger.error("Error extracting propositions, don't break the chat loop", e);
-        }
+        extractionTrigger.onExchange(event, due -> extractionScheduler.submit(due.conversation.getId(), () -> {
+            try {
+                extractPropositions(due);
+            } catch (Exception e) {
+                logger.error("Error extracting propositions, don't break the chat loop", e);
+            }
+        }));
     }
 
     /**
@@ -96,7 +136,9 @@ public class ConversationPropositionExtraction {
 
         // Wrap conversation as incremental source and analyze
         var source = new ConversationSource(event.conversation);
-        var result = analyzer.analyze(source, context);
+        // Extraction and revision use the STANDARD model
+        var result = concurrencyLimiter.call(STANDARD,
+                () -> analyzerForContext(event.user.getCurrentContext()).analyze(source, context));
 
         if (result == null) {
             logger.info("Analysis skipped (not ready or already processed)");
@@ -146,9 +188,53 @@ public class ConversationPropositionExtraction {
         }
     }
 
-    private EntityResolver entityResolverForUser(KnowledgeUser user) {
-        return KnownEntityResolver.withKnownEntities(
-                List.of(KnownEntity.asCurrentUser(user)), entityResolver
-        );
+    private IncrementalAnalyzer<Message, ChunkPropositionResult> analyzerForContext(String contextId) {
+        return analyzers.computeIfAbsent(contextId, id -> {
+            var pipeline = PropositionPipeline.withExtractor(propositionExtractor)
+                    .withRevision(propositionReviser, propositionRepository.forContext(id));
+
+            return new PropositionIncrementalAnalyzer<>(
+                    pipeline,
+                    chunkHistoryStore,
+                    MessageFormatter.INSTANCE,
+                    new WindowConfig(
+                            windowProperties.windowSize(),
+                            windowProperties.overlapSize(),
+                            windowProperties.triggerInterval())
+            );
+        });
+    }
+
+    /**
+     * The resolver of the user, created again when the profile of the user changed so the user is resolved as they
+     * are now.
+     */
+    private synchronized EntityResolver entityResolverForUser(KnowledgeUser user) {
+        var profile = UserResolver.profileOf(user);
+        var current = userResolvers.get(user.getId());
+        if (current == null || !current.profile().equals(profile)) {
+            current = new UserResolver(profile, new CachingEntityResolver(
+                    KnownEntityResolver.withKnownEntities(List.of(KnownEntity.asCurrentUser(user)), entityResolver),
+                    entityRepository,
+                    resolutionCacheProperties.maxEntries(),
+                    meterRegistry
+            ));
+            userResolvers.put(user.getId(), current);
+        }
+        return current.resolver();
+    }
+
+    private synchronized void invalidateResolutions(String entityId) {
+        userResolvers.values().forEach(userResolver -> userResolver.resolver().invalidate(entityId));
+    }
+
+    /**
+     * The entity resolver of a user, with the profile of the user it knows.
+     */
+    private record UserResolver(List<String> profile, CachingEntityResolver resolver) {
+
+        static List<String> profileOf(KnowledgeUser user) {
+            return Arrays.asList(user.getName(), user.getDescription(), user.getUsername(), user.getEmail());
+        }
     }
 }
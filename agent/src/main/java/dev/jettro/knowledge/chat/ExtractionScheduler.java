@@ -0,0 +1,171 @@
+package dev.jettro.knowledge.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs proposition extraction on a dedicated pool with a bounded queue.
+ * <p>
+ * Requests are queued per key, the conversation. A request for a conversation that is already waiting replaces the
+ * waiting one, so only the latest state of a conversation is extracted. Conversations are served in the order they
+ * were queued and never run twice at the same time, so one busy user cannot take over the pool. When the queue is
+ * full, a request for a new conversation is dropped or deferred, depending on the
+ * {@link ExtractionSchedulerProperties.OverflowPolicy}.
+ * </p>
+ * <p>
+ * The backlog is visible in the {@code knowledge.extraction.queue.depth} gauge and the
+ * {@code knowledge.extraction.queue.wait} timer.
+ * </p>
+ */
+@Component
+public class ExtractionScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ExtractionScheduler.class);
+
+    private final ExtractionSchedulerProperties properties;
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final ArrayDeque<String> ready = new ArrayDeque<>();
+    private final Set<String> running = new HashSet<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledExecutorService deferExecutor;
+
+    private final Timer waitTimer;
+    private final Timer runTimer;
+    private final Counter coalesced;
+    private final Counter deferred;
+    private final Counter dropped;
+
+    private boolean stopped;
+
+    public ExtractionScheduler(ExtractionSchedulerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.deferExecutor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("extraction-defer").daemon().factory());
+        this.waitTimer = Timer.builder("knowledge.extraction.queue.wait").register(meterRegistry);
+        this.runTimer = Timer.builder("knowledge.extraction.duration").register(meterRegistry);
+        this.coalesced = meterRegistry.counter("knowledge.extraction.requests", "result", "coalesced");
+        this.deferred = meterRegistry.counter("knowledge.extraction.requests", "result", "deferred");
+        this.dropped = meterRegistry.counter("knowledge.extraction.requests", "result", "dropped");
+        Gauge.builder("knowledge.extraction.queue.depth", this, ExtractionScheduler::queueDepth)
+                .register(meterRegistry);
+
+        var factory = Thread.ofPlatform().name("extraction-", 0).daemon().factory();
+        for (int i = 0; i < properties.workerThreads(); i++) {
+            var worker = factory.newThread(this::work);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues the task for the key, replacing a task for the same key that did not start yet. Returns {@code false}
+     * when the task was dropped or deferred because the queue is full.
+     */
+    public boolean submit(String key, Runnable task) {
+        return submit(key, task, 0);
+    }
+
+    public synchronized int queueDepth() {
+        return pending.size();
+    }
+
+    private synchronized boolean submit(String key, Runnable task, int deferrals) {
+        if (stopped) {
+            return false;
+        }
+        var waiting = pending.get(key);
+        if (waiting != null) {
+            pending.put(key, new Pending(task, waiting.queuedAt()));
+            coalesced.increment();
+            logger.debug("Replaced waiting extraction for {} with a newer request", key);
+            return true;
+        }
+        if (pending.size() >= properties.queueCapacity()) {
+            overflow(key, task, deferrals);
+            return false;
+        }
+
+        pending.put(key, new Pending(task, System.nanoTime()));
+        if (!running.contains(key)) {
+            ready.add(key);
+            notifyAll();
+        }
+        return true;
+    }
+
+    private void overflow(String key, Runnable task, int deferrals) {
+        if (properties.overflowPolicy() == ExtractionSchedulerProperties.OverflowPolicy.DEFER
+                && deferrals < properties.maxDeferrals()) {
+            deferred.increment();
+            logger.info("Extraction queue is full, deferring extraction for {} by {}", key, properties.deferDelay());
+            deferExecutor.schedule(() -> submit(key, task, deferrals + 1),
+                    properties.deferDelay().toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            dropped.increment();
+            logger.warn("Extraction queue is full, dropping extraction for {}", key);
+        }
+    }
+
+    private void work() {
+        while (true) {
+            String key;
+            Pending next;
+            synchronized (this) {
+                while (!stopped && ready.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (stopped) {
+                    return;
+                }
+                key = ready.poll();
+                next = pending.remove(key);
+                running.add(key);
+            }
+
+            waitTimer.record(Duration.ofNanos(System.nanoTime() - next.queuedAt()));
+            try {
+                runTimer.record(next.task());
+            } catch (RuntimeException e) {
+                logger.error("Extraction for {} failed", key, e);
+            } finally {
+                synchronized (this) {
+                    running.remove(key);
+                    // A newer request came in while this one ran
+                    if (pending.containsKey(key)) {
+                        ready.add(key);
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        deferExecutor.shutdownNow();
+        workers.forEach(Thread::interrupt);
+    }
+
+    private record Pending(Runnable task, long queuedAt) {
+    }
+}
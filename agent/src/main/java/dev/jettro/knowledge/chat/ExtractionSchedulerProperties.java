@@ -0,0 +1,35 @@
+package dev.jettro.knowledge.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the scheduler that runs proposition extraction in the background.
+ *
+ * @param workerThreads  Number of extractions that run at the same time.
+ * @param queueCapacity  Maximum number of conversations waiting for extraction.
+ * @param overflowPolicy What to do with a request for a new conversation when the queue is full.
+ * @param deferDelay     Time to wait before a deferred request tries to enter the queue again.
+ * @param maxDeferrals   Number of times a request is deferred before it is dropped.
+ */
+@ConfigurationProperties(prefix = "knowledge.extraction.scheduler")
+public record ExtractionSchedulerProperties(
+        @DefaultValue("2") int workerThreads,
+        @DefaultValue("100") int queueCapacity,
+        @DefaultValue("DEFER") OverflowPolicy overflowPolicy,
+        @DefaultValue("5s") Duration deferDelay,
+        @DefaultValue("3") int maxDeferrals) {
+
+    public enum OverflowPolicy {
+        /**
+         * Drop the request, the next exchange in the conversation triggers extraction again.
+         */
+        DROP,
+        /**
+         * Try again after the defer delay, drop the request after the maximum number of deferrals.
+         */
+        DEFER
+    }
+}
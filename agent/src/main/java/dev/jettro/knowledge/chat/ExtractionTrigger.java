@@ -0,0 +1,109 @@
+package dev.jettro.knowledge.chat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Debounces conversation exchanges, so a burst of messages results in a single extraction.
+ * <p>
+ * Every exchange is counted against the conversation. Extraction fires when enough new messages came in, when the
+ * new messages exceed the token budget, or when the conversation was idle for the idle timeout, whichever comes
+ * first. Token counts are estimated at four characters per token.
+ * </p>
+ */
+@Component
+public class ExtractionTrigger {
+    private static final Logger logger = LoggerFactory.getLogger(ExtractionTrigger.class);
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final ExtractionTriggerProperties properties;
+    private final ScheduledExecutorService timer;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ConversationState> conversations;
+
+    public ExtractionTrigger(ExtractionTriggerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("extraction-trigger").daemon().factory());
+        this.conversations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ConversationState> eldest) {
+                return size() > properties.maxConversations();
+            }
+        };
+    }
+
+    /**
+     * Records the exchange and calls {@code extraction} with the latest event once the conversation is due.
+     */
+    public synchronized void onExchange(ConversationAnalysisRequestEvent event,
+                                        Consumer<ConversationAnalysisRequestEvent> extraction) {
+        var conversationId = event.conversation.getId();
+        var state = conversations.computeIfAbsent(conversationId, id -> new ConversationState());
+        var messages = event.conversation.getMessages();
+
+        int newMessages = messages.size() - state.messagesAtLastExtraction;
+        long newChars = 0;
+        for (int i = Math.max(0, state.messagesAtLastExtraction); i < messages.size(); i++) {
+            var content = messages.get(i).getContent();
+            newChars += content == null ? 0 : content.length();
+        }
+        long newTokens = newChars / CHARS_PER_TOKEN;
+
+        state.latest = event;
+        state.extraction = extraction;
+        if (state.idleTimer != null) {
+            state.idleTimer.cancel(false);
+            state.idleTimer = null;
+        }
+
+        if (newMessages >= properties.minNewMessages()) {
+            fire(conversationId, state, "messages");
+        } else if (newTokens >= properties.tokenBudget()) {
+            fire(conversationId, state, "tokens");
+        } else {
+            state.idleTimer = timer.schedule(() -> onIdle(conversationId, state),
+                    properties.idleTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void onIdle(String conversationId, ConversationState state) {
+        if (state.latest != null) {
+            fire(conversationId, state, "idle");
+        }
+    }
+
+    private void fire(String conversationId, ConversationState state, String reason) {
+        logger.debug("Triggering extraction for conversation {} ({})", conversationId, reason);
+        meterRegistry.counter("knowledge.extraction.triggers", "reason", reason).increment();
+        var event = state.latest;
+        state.messagesAtLastExtraction = event.conversation.getMessages().size();
+        state.latest = null;
+        state.idleTimer = null;
+        state.extraction.accept(event);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private static final class ConversationState {
+        private int messagesAtLastExtraction;
+        private ConversationAnalysisRequestEvent latest;
+        private Consumer<ConversationAnalysisRequestEvent> extraction;
+        private ScheduledFuture<?> idleTimer;
+    }
+}
@@ -0,0 +1,23 @@
+package dev.jettro.knowledge.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * When proposition extraction runs for a conversation. Extraction starts as soon as one of the limits is reached,
+ * whichever comes first.
+ *
+ * @param minNewMessages   Number of new messages since the last extraction.
+ * @param idleTimeout      Time without new messages in the conversation.
+ * @param tokenBudget      Estimated number of tokens in the new messages.
+ * @param maxConversations Maximum number of conversations tracked, the least recently active ones are forgotten.
+ */
+@ConfigurationProperties(prefix = "knowledge.extraction.trigger")
+public record ExtractionTriggerProperties(
+        @DefaultValue("6") int minNewMessages,
+        @DefaultValue("30s") Duration idleTimeout,
+        @DefaultValue("2000") int tokenBudget,
+        @DefaultValue("10000") int maxConversations) {
+}
@@ -0,0 +1,19 @@
+package dev.jettro.knowledge.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * The {@code WindowConfig} of the incremental analyzer that extracts propositions from conversations.
+ *
+ * @param windowSize      Number of messages in a window that is sent for extraction.
+ * @param overlapSize     Number of messages shared with the previous window, for context.
+ * @param triggerInterval Minimum number of new messages before the analyzer processes a window. Keep it low, the
+ *                        {@link ExtractionTrigger} decides when extraction runs.
+ */
+@ConfigurationProperties(prefix = "knowledge.extraction.window")
+public record ExtractionWindowProperties(
+        @DefaultValue("10") int windowSize,
+        @DefaultValue("2") int overlapSize,
+        @DefaultValue("2") int triggerInterval) {
+}
@@ -0,0 +1,134 @@
+package dev.jettro.knowledge.chat;
+
+import dev.jettro.knowledge.chat.model.Roles;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of concurrent model calls per {@link Roles model role}.
+ * <p>
+ * Chat turns run on virtual threads, so waiting for a slot is cheap and thousands of conversations can wait without
+ * tying up platform threads. Calls that do not get a slot within the acquire timeout fail with an
+ * {@link IllegalStateException}. Active calls are visible in the {@code knowledge.llm.calls.active} gauge, the time
+ * spent waiting in the {@code knowledge.llm.calls.wait} timer.
+ * </p>
+ * <p>
+ * A single {@link #call} can contain several model round-trips with tool calls in between. Tools that run on the
+ * calling thread give the slot back while they work through {@link #outsideModelCall}, and wait for a slot again
+ * before the model continues, so a slot is only held while the model is working. Waiting for the slot again has no
+ * timeout: the tool already did its work and its result, or its exception, must reach the model.
+ * </p>
+ * <p>
+ * The slot is found through a thread local, so only tools that run on the thread of the {@link #call} give it back.
+ * When the response is streamed, Reactor can run the tool calls on its own threads. Those tools run without
+ * releasing anything and the {@link Roles#CHEAPEST} slot of the turn stays held until the stream completes.
+ * </p>
+ */
+@Component
+public class ModelConcurrencyLimiter {
+
+    private final ModelConcurrencyProperties properties;
+    private final Map<Roles, Semaphore> permits = new EnumMap<>(Roles.class);
+    private final Map<Roles, Timer> waitTimers = new EnumMap<>(Roles.class);
+    private final ThreadLocal<Slot> currentSlot = new ThreadLocal<>();
+
+    /**
+     * The slot held by a call on the current thread.
+     */
+    private static final class Slot {
+        private final Roles role;
+        private boolean held = true;
+
+        private Slot(Roles role) {
+            this.role = role;
+        }
+    }
+
+    public ModelConcurrencyLimiter(ModelConcurrencyProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        for (Roles role : Roles.values()) {
+            int limit = properties.limitFor(role);
+            var semaphore = new Semaphore(limit, true);
+            permits.put(role, semaphore);
+            waitTimers.put(role, Timer.builder("knowledge.llm.calls.wait")
+                    .tag("role", role.name())
+                    .register(meterRegistry));
+            Gauge.builder("knowledge.llm.calls.active", semaphore, s -> limit - s.availablePermits())
+                    .tag("role", role.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Runs the call once a slot for the role is free.
+     */
+    public <T> T call(Roles role, Supplier<T> call) {
+        acquire(role);
+        var previous = currentSlot.get();
+        var slot = new Slot(role);
+        currentSlot.set(slot);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                currentSlot.remove();
+            } else {
+                currentSlot.set(previous);
+            }
+            if (slot.held) {
+                permits.get(role).release();
+            }
+        }
+    }
+
+    /**
+     * Runs work that is not a model call, like a tool, inside a {@link #call}. The slot of the call is free while the
+     * work runs and is acquired again afterwards, waiting as long as it takes. Outside a call, or on another thread
+     * than the one running the call, the work just runs.
+     */
+    public <T> T outsideModelCall(Supplier<T> work) {
+        var slot = currentSlot.get();
+        if (slot == null || !slot.held) {
+            return work.get();
+        }
+        permits.get(slot.role).release();
+        slot.held = false;
+        try {
+            return work.get();
+        } finally {
+            reacquire(slot.role);
+            slot.held = true;
+        }
+    }
+
+    private void reacquire(Roles role) {
+        long start = System.nanoTime();
+        permits.get(role).acquireUninterruptibly();
+        waitTimers.get(role).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void acquire(Roles role) {
+        var semaphore = permits.get(role);
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(properties.acquireTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a " + role + " model slot", e);
+        }
+        waitTimers.get(role).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            throw new IllegalStateException("No " + role + " model slot available within "
+                    + properties.acquireTimeout());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package dev.jettro.knowledge.chat;
+
+import dev.jettro.knowledge.chat.model.Roles;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Limits on the number of concurrent model calls. With virtual threads there is no thread pool that caps the number
+ * of calls, so the limits are set per model role.
+ *
+ * @param maxConcurrentCalls        Maximum number of concurrent calls per model role.
+ * @param defaultMaxConcurrentCalls Limit for roles that are not configured in {@code maxConcurrentCalls}.
+ * @param acquireTimeout            Maximum time a call waits for a free slot before it fails.
+ */
+@ConfigurationProperties(prefix = "knowledge.concurrency")
+public record ModelConcurrencyProperties(
+        @DefaultValue Map<Roles, Integer> maxConcurrentCalls,
+        @DefaultValue("32") int defaultMaxConcurrentCalls,
+        @DefaultValue("60s") Duration acquireTimeout) {
+
+    public int limitFor(Roles role) {
+        return maxConcurrentCalls.getOrDefault(role, defaultMaxConcurrentCalls);
+    }
+}
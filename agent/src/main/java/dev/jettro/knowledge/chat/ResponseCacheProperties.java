@@ -0,0 +1,25 @@
+package dev.jettro.knowledge.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the semantic cache for answers to questions about the sources.
+ *
+ * @param enabled             Whether answers are cached, off by default.
+ * @param similarityThreshold Minimum cosine similarity between two questions to reuse an answer.
+ * @param memoryThreshold     A question is not cached for a user who has a memory proposition at least this similar
+ *                            to it, because that memory could change the answer.
+ * @param ttl                 Time an answer stays valid.
+ * @param maxEntries          Maximum number of cached answers, the oldest ones are dropped first.
+ */
+@ConfigurationProperties(prefix = "knowledge.chat.response-cache")
+public record ResponseCacheProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("0.95") double similarityThreshold,
+        @DefaultValue("0.75") double memoryThreshold,
+        @DefaultValue("1h") Duration ttl,
+        @DefaultValue("1000") int maxEntries) {
+}
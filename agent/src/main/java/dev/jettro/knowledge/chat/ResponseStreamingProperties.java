@@ -0,0 +1,20 @@
+package dev.jettro.knowledge.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration for streaming assistant responses to the client while they are generated.
+ *
+ * @param enabled           Whether responses are streamed, when disabled the client only receives the full response.
+ * @param frameInterval     Maximum time tokens are collected before they are sent as a frame.
+ * @param maxTokensPerFrame Number of tokens that are sent as a frame right away, without waiting for the interval.
+ */
+@ConfigurationProperties(prefix = "knowledge.chat.streaming")
+public record ResponseStreamingProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("25ms") Duration frameInterval,
+        @DefaultValue("64") int maxTokensPerFrame) {
+}
@@ -0,0 +1,179 @@
+package dev.jettro.knowledge.chat;
+
+import com.embabel.chat.Conversation;
+import com.embabel.common.ai.model.EmbeddingService;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import dev.jettro.knowledge.embedding.EmbeddingServices;
+import dev.jettro.knowledge.ingest.SourcesIndexChangedEvent;
+import dev.jettro.knowledge.proposition.store.LucenePropositionRepository;
+import dev.jettro.knowledge.security.KnowledgeUser;
+import dev.jettro.knowledge.vector.PackedVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.*;
+
+import static dev.jettro.knowledge.chat.model.Roles.FAST;
+
+/**
+ * Reuses answers to questions about the sources that were asked before.
+ * <p>
+ * An answer is reused when the new question is at least {@code similarityThreshold} similar to a cached one of the
+ * same user. Only the opening question of a conversation uses the cache, a follow-up depends on the turns before it.
+ * Answers are kept per user because the assistant addresses the user by name.
+ * </p>
+ * <p>
+ * An answer is only cached when the model was given chunks of the sources and no memories of the user during the
+ * turn, as recorded by the tools in the {@link TurnRetrievals}, so the entry is based on the context the model
+ * actually saw. The whole cache is cleared whenever a change to the sources is committed, and answers of turns that
+ * started before that are not cached. A hit is not used when the user has memory propositions close to the
+ * question, because their memory could change the answer.
+ * </p>
+ * <p>
+ * Question embeddings are kept in a {@link PackedVectorStore}, so a miss costs an embedding and a scan of the cached
+ * questions. Only a hit also searches the memories of the user.
+ * </p>
+ */
+@Component
+public class SemanticResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(SemanticResponseCache.class);
+    private static final int CANDIDATES = 4;
+
+    private final ResponseCacheProperties properties;
+    private final LucenePropositionRepository propositionRepository;
+    private final EmbeddingService embeddingService;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    // Insertion ordered, so the first entry is the oldest
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>();
+
+    private PackedVectorStore questions;
+    // Incremented on invalidation, answers of turns that looked up before it are not cached
+    private long generation;
+
+    public SemanticResponseCache(ResponseCacheProperties properties,
+                                 LucenePropositionRepository propositionRepository,
+                                 EmbeddingServices embeddingServices,
+                                 MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.propositionRepository = propositionRepository;
+        this.embeddingService = embeddingServices.byRole(FAST);
+        this.meterRegistry = meterRegistry;
+        this.clock = Clock.systemUTC();
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Looks up a cached answer for the last question of the conversation. Pass the returned lookup to
+     * {@link #put(Lookup, String, TurnRetrievals)} to cache the answer when there was no hit.
+     */
+    public Lookup lookup(KnowledgeUser user, Conversation conversation) {
+        long startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+        var messages = conversation.getMessages();
+        if (messages.size() != 1) {
+            count("bypass");
+            return Lookup.BYPASS;
+        }
+
+        var question = messages.getLast().getContent();
+        var embedding = embeddingService.embed(question);
+        var answer = findAnswer(user.getId(), embedding);
+        if (answer != null && hasRelevantMemory(user, question)) {
+            count("bypass");
+            return Lookup.BYPASS;
+        }
+        count(answer == null ? "miss" : "hit");
+        return new Lookup(user.getId(), embedding, answer, startGeneration);
+    }
+
+    /**
+     * Caches the answer of a missed lookup, when it is based on the sources only.
+     */
+    synchronized void put(Lookup lookup, String answer, TurnRetrievals retrievals) {
+        if (lookup.bypassed() || lookup.answer() != null || answer == null || answer.isBlank()) {
+            return;
+        }
+        if (retrievals.memoryFound() || retrievals.chunkIds().isEmpty() || lookup.generation() != generation) {
+            return;
+        }
+        if (questions == null) {
+            questions = new PackedVectorStore(lookup.embedding().length);
+        }
+        while (entries.size() >= properties.maxEntries()) {
+            evict(entries.keySet().iterator().next());
+        }
+        int handle = questions.add(lookup.embedding());
+        entries.put(handle, new Entry(lookup.userId(), answer, clock.instant().plus(properties.ttl())));
+    }
+
+    @EventListener
+    public synchronized void onSourcesIndexChanged(SourcesIndexChangedEvent event) {
+        generation++;
+        if (!entries.isEmpty()) {
+            logger.info("Sources changed by ingestion job {}, clearing {} cached answers", event.jobId, entries.size());
+        }
+        entries.clear();
+        questions = null;
+    }
+
+    private synchronized String findAnswer(String userId, float[] embedding) {
+        if (questions == null || questions.dimensions() != embedding.length) {
+            return null;
+        }
+        var now = clock.instant();
+        var topK = new PackedVectorStore.TopK(CANDIDATES);
+        questions.search(embedding, handle -> {
+            var entry = entries.get(handle);
+            return entry != null && entry.userId().equals(userId);
+        }, topK);
+
+        for (int i = 0; i < topK.count() && topK.score(i) >= properties.similarityThreshold(); i++) {
+            var entry = entries.get(topK.handle(i));
+            if (entry.expiresAt().isAfter(now)) {
+                logger.debug("Reusing the answer to a question with similarity {}", topK.score(i));
+                return entry.answer();
+            }
+            evict(topK.handle(i));
+        }
+        return null;
+    }
+
+    private void evict(int handle) {
+        entries.remove(handle);
+        questions.remove(handle);
+    }
+
+    private boolean hasRelevantMemory(KnowledgeUser user, String question) {
+        var request = new TextSimilaritySearchRequest(question, properties.memoryThreshold(), 1);
+        return !propositionRepository.findSimilarWithScores(user.getCurrentContext(), request).isEmpty();
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("knowledge.chat.response-cache", "result", result).increment();
+    }
+
+    /**
+     * Result of a lookup, {@code answer} is {@code null} when nothing was found.
+     */
+    public record Lookup(String userId, float[] embedding, String answer, long generation) {
+        static final Lookup BYPASS = new Lookup(null, null, null, -1);
+
+        boolean bypassed() {
+            return userId == null;
+        }
+    }
+
+    private record Entry(String userId, String answer, Instant expiresAt) {
+    }
+}
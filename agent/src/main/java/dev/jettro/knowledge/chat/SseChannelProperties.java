@@ -0,0 +1,33 @@
+package dev.jettro.knowledge.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration for the buffered SSE output channel of a chat session.
+ *
+ * @param bufferSize     Number of events kept per session, for clients that are behind and for replay on reconnect.
+ * @param maxBatchSize   Maximum number of events written to the client in a single flush.
+ * @param overflowPolicy What to do when a connected client falls a full buffer behind.
+ */
+@ConfigurationProperties(prefix = "knowledge.chat.sse")
+public record SseChannelProperties(
+        @DefaultValue("1024") int bufferSize,
+        @DefaultValue("64") int maxBatchSize,
+        @DefaultValue("DROP_OLDEST") OverflowPolicy overflowPolicy) {
+
+    public enum OverflowPolicy {
+        /**
+         * Skip the oldest events the client did not receive yet.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop new events until the client caught up.
+         */
+        DROP_NEWEST,
+        /**
+         * Close the connection of the slow client, it replays what is still buffered when it reconnects.
+         */
+        DISCONNECT
+    }
+}
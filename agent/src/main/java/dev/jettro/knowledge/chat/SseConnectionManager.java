@@ -0,0 +1,169 @@
+package dev.jettro.knowledge.chat;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Keeps track of the open SSE connections of chat clients.
+ * <p>
+ * Connections are registered per user in concurrent sets, so removing a connection when it completes, fails or times
+ * out does not copy anything, and users without connections are removed. A heartbeat comment is sent to every
+ * connection at a fixed interval, which finds half-open connections. Connections that did not receive an event for
+ * the idle timeout are closed, as is the oldest connection of a user who opens more than the maximum. The number of
+ * open connections is published as the {@code knowledge.chat.sse.connections} gauge.
+ * </p>
+ */
+@Component
+public class SseConnectionManager {
+    private static final Logger logger = LoggerFactory.getLogger(SseConnectionManager.class);
+
+    private final SseConnectionProperties properties;
+    private final Map<String, Set<Connection>> connectionsByUser = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeatScheduler;
+    private final ExecutorService heartbeatWriters;
+
+    public SseConnectionManager(SseConnectionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("sse-heartbeat").daemon().factory());
+        this.heartbeatWriters = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("sse-heartbeat-", 0).factory());
+        long interval = properties.heartbeatInterval().toMillis();
+        heartbeatScheduler.scheduleAtFixedRate(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+        Gauge.builder("knowledge.chat.sse.connections", this, SseConnectionManager::connectionCount)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a new connection for the user. The connection is removed from the registry as soon as it ends.
+     */
+    public SseEmitter open(String userId) {
+        var emitter = new TrackedSseEmitter(properties.maxLifetime().toMillis());
+        var connection = new Connection(userId, emitter, System.nanoTime());
+
+        // Added inside compute, so a concurrent remove of the last connection cannot drop the set in between
+        connectionsByUser.compute(userId, (id, connections) -> {
+            var userConnections = connections == null ? ConcurrentHashMap.<Connection>newKeySet() : connections;
+            userConnections.add(connection);
+            return userConnections;
+        });
+        emitter.onCompletion(() -> remove(connection));
+        emitter.onError(throwable -> remove(connection));
+        emitter.onTimeout(() -> remove(connection));
+
+        enforceUserLimit(userId);
+        return emitter;
+    }
+
+    public int connectionCount() {
+        return connectionsByUser.values().stream().mapToInt(Set::size).sum();
+    }
+
+    public int connectionCount(String userId) {
+        var connections = connectionsByUser.get(userId);
+        return connections == null ? 0 : connections.size();
+    }
+
+    private void enforceUserLimit(String userId) {
+        var connections = connectionsByUser.get(userId);
+        while (connections != null && connections.size() > properties.maxPerUser()) {
+            var oldest = connections.stream().min(Comparator.comparingLong(Connection::openedAt));
+            if (oldest.isEmpty()) {
+                return;
+            }
+            logger.info("User {} has more than {} connections, closing the oldest", userId, properties.maxPerUser());
+            close(oldest.get());
+        }
+    }
+
+    private void heartbeat() {
+        long now = System.nanoTime();
+        long idleNanos = properties.idleTimeout().toNanos();
+        for (Set<Connection> connections : connectionsByUser.values()) {
+            for (Connection connection : connections) {
+                if (now - connection.emitter().lastActivity() > idleNanos) {
+                    logger.debug("Closing idle connection of user {}", connection.userId());
+                    close(connection);
+                } else {
+                    heartbeatWriters.execute(() -> sendHeartbeat(connection));
+                }
+            }
+        }
+    }
+
+    private void sendHeartbeat(Connection connection) {
+        try {
+            connection.emitter().sendHeartbeat();
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("Heartbeat to user {} failed, removing the connection", connection.userId());
+            remove(connection);
+            connection.emitter().completeWithError(e);
+        }
+    }
+
+    private void close(Connection connection) {
+        remove(connection);
+        connection.emitter().complete();
+    }
+
+    private void remove(Connection connection) {
+        connectionsByUser.computeIfPresent(connection.userId(), (userId, connections) -> {
+            connections.remove(connection);
+            return connections.isEmpty() ? null : connections;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        heartbeatScheduler.shutdownNow();
+        heartbeatWriters.shutdownNow();
+        connectionsByUser.values().forEach(connections -> connections.forEach(c -> c.emitter().complete()));
+        connectionsByUser.clear();
+    }
+
+    private record Connection(String userId, TrackedSseEmitter emitter, long openedAt) {
+    }
+
+    /**
+     * Emitter that remembers when it last sent an event, heartbeats do not count as activity.
+     */
+    static class TrackedSseEmitter extends SseEmitter {
+        private volatile long lastActivity = System.nanoTime();
+
+        TrackedSseEmitter(long timeout) {
+            super(timeout);
+        }
+
+        long lastActivity() {
+            return lastActivity;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            super.send(builder);
+            lastActivity = System.nanoTime();
+        }
+
+        @Override
+        public void send(Set<ResponseBodyEmitter.DataWithMediaType> items) throws IOException {
+            super.send(items);
+            lastActivity = System.nanoTime();
+        }
+
+        void sendHeartbeat() throws IOException {
+            super.send(SseEmitter.event().comment("heartbeat"));
+        }
+    }
+}
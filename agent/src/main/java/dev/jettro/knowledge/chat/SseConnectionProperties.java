@@ -0,0 +1,22 @@
+package dev.jettro.knowledge.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the SSE connections of chat clients.
+ *
+ * @param heartbeatInterval Interval of the heartbeat comments that keep connections open and detect dead clients.
+ * @param idleTimeout       Connections that did not receive an event for this long are closed.
+ * @param maxLifetime       Connections are closed after this time, the browser reconnects by itself.
+ * @param maxPerUser        Maximum number of open connections per user, the oldest one is closed first.
+ */
+@ConfigurationProperties(prefix = "knowledge.chat.sse.connections")
+public record SseConnectionProperties(
+        @DefaultValue("15s") Duration heartbeatInterval,
+        @DefaultValue("30m") Duration idleTimeout,
+        @DefaultValue("12h") Duration maxLifetime,
+        @DefaultValue("5") int maxPerUser) {
+}
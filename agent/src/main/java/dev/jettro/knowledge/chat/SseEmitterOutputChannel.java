@@ -4,9 +4,15 @@ import com.embabel.agent.api.channel.*;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Implementation of {@link OutputChannel} that uses Spring's {@link SseEmitter} for Server-Sent Events (SSE).
@@ -15,26 +21,61 @@ import java.io.IOException;
  * to receive events. On reconnecting a client, the OutputChannel can receive a new emitter.
  * </p>
  * <p>
- * Individual {@link OutputChannelEvent} instances are sent sequentially to the client.
+ * Sending an event never blocks the agent. Events are numbered and stored in a bounded ring buffer per session, a
+ * writer on a virtual thread sends them to the client in batches. A slow or broken client therefore only falls
+ * behind, what happens when it falls a full buffer behind is set by the
+ * {@link SseChannelProperties.OverflowPolicy}. Events sent before a client connects are kept, and a client that
+ * reconnects with a {@code Last-Event-ID} receives the buffered events it missed.
  * </p>
  */
 public class SseEmitterOutputChannel implements OutputChannel {
     private static final Logger logger = LoggerFactory.getLogger(SseEmitterOutputChannel.class);
+    private static final Executor WRITERS =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-writer-", 0).factory());
+
+    private final SseChannelProperties properties;
+    private final BufferedEvent[] buffer;
 
     private SseEmitter emitter;
+    // ID of the next event, IDs start at 1
+    private long nextId = 1;
+    // ID of the last event written to the current emitter
+    private long sentUpTo;
+    private boolean draining;
+    private long dropped;
+
+    public SseEmitterOutputChannel(SseChannelProperties properties) {
+        this.properties = properties;
+        this.buffer = new BufferedEvent[properties.bufferSize()];
+    }
 
     /**
      * Sets the SSE emitter to use for sending events. The output channel can receive new  emitters.
      *
-     * @param emitter The active Sse emitter for sending the events.
+     * @param emitter     The active Sse emitter for sending the events.
+     * @param lastEventId The {@code Last-Event-ID} sent by a reconnecting client, or {@code null}. Buffered events
+     *                    after this ID are sent again.
      */
-    public void setEmitter(SseEmitter emitter, String processId) {
+    public void setEmitter(SseEmitter emitter, String processId, String lastEventId) {
         logger.info("Setting emitter for process: {}", processId);
-        this.emitter = emitter;
 
-        // Create the connected event to send to the client
+        long connectedId;
+        synchronized (this) {
+            // The previous emitter stops here, events sent meanwhile are buffered for the new one
+            this.emitter = null;
+            var replayFrom = parseEventId(lastEventId);
+            if (replayFrom >= 0) {
+                sentUpTo = Math.min(replayFrom, nextId - 1);
+                logger.info("Client of process {} reconnected after event {}, replaying {} buffered events",
+                        processId, replayFrom, nextId - 1 - sentUpTo);
+            }
+            connectedId = sentUpTo;
+        }
+
+        // Create the connected event to send to the client. Its ID is the last event the client has, so a client
+        // that reconnects right after it gets all events that follow.
         var sseEvent = SseEmitter.event()
-                .id(processId)
+                .id(Long.toString(connectedId))
                 .name("Connected")
                 .data(new SseEmitterOutputChannel.ConnectedOutputChannelEvent(processId))
                 .build();
@@ -45,32 +86,143 @@ public class SseEmitterOutputChannel implements OutputChannel {
         } catch (IOException e) {
             throw new OutputChannelRuntimeException("Problem sending the sse stream connected event.", e);
         }
+
+        emitter.onCompletion(() -> detach(emitter));
+        emitter.onError(throwable -> detach(emitter));
+        emitter.onTimeout(() -> detach(emitter));
+
+        synchronized (this) {
+            this.emitter = emitter;
+            scheduleDrain();
+        }
     }
 
     @Override
     public void send(@NotNull OutputChannelEvent event) {
+        synchronized (this) {
+            if (nextId - 1 - sentUpTo >= buffer.length) {
+                if (emitter == null) {
+                    // No client to send to, the oldest unsent event is overwritten
+                    logger.debug("No client connected for process {}, overwriting the oldest buffered event",
+                            event.getProcessId());
+                    dropped++;
+                } else if (!overflow(event)) {
+                    return;
+                }
+            }
+            buffer[(int) (nextId % buffer.length)] = new BufferedEvent(nextId, event);
+            nextId++;
+            scheduleDrain();
+        }
+    }
 
-        if (emitter == null) {
-            logger.warn("No emitter set, dropping event: {}", event);
-            return;
+    /**
+     * Number of events that were dropped because the client was too slow or not connected while the buffer was full.
+     */
+    public synchronized long droppedEvents() {
+        return dropped;
+    }
+
+    /**
+     * Applies the overflow policy, returns whether the new event should still be buffered.
+     */
+    private boolean overflow(OutputChannelEvent event) {
+        switch (properties.overflowPolicy()) {
+            case DROP_NEWEST -> {
+                logger.debug("Client of process {} is too slow, dropping event", event.getProcessId());
+                dropped++;
+                return false;
+            }
+            case DISCONNECT -> {
+                logger.warn("Client of process {} is too slow, closing its connection", event.getProcessId());
+                var slowEmitter = emitter;
+                emitter = null;
+                WRITERS.execute(slowEmitter::complete);
+                // The oldest unsent event is overwritten
+                dropped++;
+                return true;
+            }
+            default -> {
+                // The oldest unsent event is overwritten
+                dropped++;
+                return true;
+            }
         }
+    }
 
-        // Create the event to send to the client
-        var sseEvent = SseEmitter.event()
-                .id(event.getProcessId())
-                .name(event.getClass().getSimpleName())
-                .data(event)
-                .build();
+    private void scheduleDrain() {
+        if (!draining && emitter != null && sentUpTo < nextId - 1) {
+            draining = true;
+            WRITERS.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            SseEmitter target;
+            List<BufferedEvent> batch = new ArrayList<>();
+            synchronized (this) {
+                if (emitter == null || sentUpTo >= nextId - 1) {
+                    draining = false;
+                    return;
+                }
+                target = emitter;
+                // Events older than the buffer were overwritten
+                long from = Math.max(sentUpTo + 1, nextId - buffer.length);
+                long to = Math.min(nextId - 1, from + properties.maxBatchSize() - 1);
+                for (long id = from; id <= to; id++) {
+                    batch.add(buffer[(int) (id % buffer.length)]);
+                }
+            }
+
+            try {
+                target.send(toSseEvents(batch));
+                synchronized (this) {
+                    if (emitter == target) {
+                        sentUpTo = batch.getLast().id();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                logger.info("Client of process {} went away, buffering events until it reconnects",
+                        batch.getFirst().event().getProcessId());
+                logger.debug("Error sending events to client", e);
+                detach(target);
+            }
+        }
+    }
+
+    private synchronized void detach(SseEmitter closed) {
+        if (emitter == closed) {
+            emitter = null;
+        }
+    }
 
-        // Send the event to the client
+    private static LinkedHashSet<ResponseBodyEmitter.DataWithMediaType> toSseEvents(List<BufferedEvent> batch) {
+        var sseEvents = new LinkedHashSet<ResponseBodyEmitter.DataWithMediaType>();
+        for (BufferedEvent buffered : batch) {
+            sseEvents.addAll(SseEmitter.event()
+                    .id(Long.toString(buffered.id()))
+                    .name(buffered.event().getClass().getSimpleName())
+                    .data(buffered.event())
+                    .build());
+        }
+        return sseEvents;
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return -1;
+        }
         try {
-            emitter.send(sseEvent);
-        } catch (IOException e) {
-            logger.error("Error sending event to client for processId: {}", event.getProcessId(), e);
-            throw new OutputChannelRuntimeException("Error sending event to client", e);
+            return Long.parseLong(lastEventId.strip());
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
+    private record BufferedEvent(long id, OutputChannelEvent event) {
+    }
+
     /**
      * Event for notifying the client that the OutputChannel is ready to receive events.
      */
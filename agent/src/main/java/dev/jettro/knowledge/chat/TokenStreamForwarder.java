@@ -0,0 +1,58 @@
+package dev.jettro.knowledge.chat;
+
+import com.embabel.agent.api.channel.OutputChannel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards the tokens of a response that is being generated to an {@link OutputChannel}.
+ * <p>
+ * Tokens are coalesced into {@link AssistantDeltaOutputChannelEvent} frames, a frame is sent every frame interval or
+ * as soon as it holds the maximum number of tokens. That keeps the number of SSE writes low without delaying the
+ * first visible text. The time to the first token is recorded in the {@code knowledge.chat.first-token} timer.
+ * </p>
+ */
+@Component
+public class TokenStreamForwarder {
+
+    private final ResponseStreamingProperties properties;
+    private final Timer firstTokenTimer;
+    private final Timer responseTimer;
+
+    public TokenStreamForwarder(ResponseStreamingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.firstTokenTimer = Timer.builder("knowledge.chat.first-token").register(meterRegistry);
+        this.responseTimer = Timer.builder("knowledge.chat.response").register(meterRegistry);
+    }
+
+    /**
+     * Sends the tokens as frames to the channel and blocks until the stream completes.
+     *
+     * @return The complete response text.
+     */
+    public String forward(Flux<String> tokens, OutputChannel channel, String processId) {
+        var streamId = UUID.randomUUID().toString();
+        var text = new StringBuilder();
+        var sequence = new int[1];
+        long start = System.nanoTime();
+
+        tokens.doOnNext(token -> {
+                    if (text.isEmpty()) {
+                        firstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                    text.append(token);
+                })
+                .bufferTimeout(properties.maxTokensPerFrame(), properties.frameInterval())
+                .doOnNext(frame -> channel.send(new AssistantDeltaOutputChannelEvent(
+                        processId, streamId, sequence[0]++, String.join("", frame))))
+                .blockLast();
+
+        responseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return text.toString();
+    }
+}
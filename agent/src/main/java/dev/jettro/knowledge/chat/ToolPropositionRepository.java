@@ -0,0 +1,109 @@
+package dev.jettro.knowledge.chat;
+
+import com.embabel.agent.rag.model.RetrievableIdentifier;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import com.embabel.dice.proposition.Proposition;
+import com.embabel.dice.proposition.PropositionRepository;
+import com.embabel.dice.proposition.PropositionStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * The proposition repository behind the memory tool of a chat turn. Every operation runs through
+ * {@link ModelConcurrencyLimiter#outsideModelCall}, so the model slot of the turn is free while the tool reads or
+ * writes memories. Reads that find memories are recorded in the {@link TurnRetrievals} of the turn.
+ */
+class ToolPropositionRepository implements PropositionRepository {
+
+    private final PropositionRepository delegate;
+    private final ModelConcurrencyLimiter concurrencyLimiter;
+    private final TurnRetrievals retrievals;
+
+    ToolPropositionRepository(PropositionRepository delegate,
+                              ModelConcurrencyLimiter concurrencyLimiter,
+                              TurnRetrievals retrievals) {
+        this.delegate = delegate;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.retrievals = retrievals;
+    }
+
+    @NotNull
+    @Override
+    public Proposition save(@NotNull Proposition proposition) {
+        return concurrencyLimiter.outsideModelCall(() -> delegate.save(proposition));
+    }
+
+    @Nullable
+    @Override
+    public Proposition findById(@NotNull String id) {
+        var proposition = concurrencyLimiter.outsideModelCall(() -> delegate.findById(id));
+        retrievals.memoryFound(proposition != null);
+        return proposition;
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByEntity(@NotNull RetrievableIdentifier entityIdentifier) {
+        return found(concurrencyLimiter.outsideModelCall(() -> delegate.findByEntity(entityIdentifier)));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findSimilar(@NotNull TextSimilaritySearchRequest request) {
+        return found(concurrencyLimiter.outsideModelCall(() -> delegate.findSimilar(request)));
+    }
+
+    @NotNull
+    @Override
+    public List<SimilarityResult<Proposition>> findSimilarWithScores(@NotNull TextSimilaritySearchRequest request) {
+        return found(concurrencyLimiter.outsideModelCall(() -> delegate.findSimilarWithScores(request)));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByStatus(@NotNull PropositionStatus status) {
+        return found(concurrencyLimiter.outsideModelCall(() -> delegate.findByStatus(status)));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByGrounding(@NotNull String chunkId) {
+        return found(concurrencyLimiter.outsideModelCall(() -> delegate.findByGrounding(chunkId)));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByMinLevel(int minLevel) {
+        return found(concurrencyLimiter.outsideModelCall(() -> delegate.findByMinLevel(minLevel)));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByContextIdValue(@NotNull String contextIdValue) {
+        return found(concurrencyLimiter.outsideModelCall(() -> delegate.findByContextIdValue(contextIdValue)));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findAll() {
+        return found(concurrencyLimiter.outsideModelCall(delegate::findAll));
+    }
+
+    @Override
+    public boolean delete(@NotNull String id) {
+        return concurrencyLimiter.outsideModelCall(() -> delegate.delete(id));
+    }
+
+    @Override
+    public int count() {
+        return concurrencyLimiter.outsideModelCall(delegate::count);
+    }
+
+    private <T> List<T> found(List<T> memories) {
+        retrievals.memoryFound(!memories.isEmpty());
+        return memories;
+    }
+}
@@ -0,0 +1,61 @@
+package dev.jettro.knowledge.chat;
+
+import com.embabel.agent.rag.model.Retrievable;
+import com.embabel.agent.rag.service.TextSearch;
+import com.embabel.agent.rag.service.VectorSearch;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * The search operations behind the RAG tools of a chat turn. Searches run through
+ * {@link ModelConcurrencyLimiter#outsideModelCall}, so the model slot of the turn is free while the tool searches,
+ * and the chunks they find are recorded in the {@link TurnRetrievals} of the turn.
+ */
+class ToolSearchOperations implements VectorSearch, TextSearch {
+
+    private final VectorSearch vectorSearch;
+    private final TextSearch textSearch;
+    private final ModelConcurrencyLimiter concurrencyLimiter;
+    private final TurnRetrievals retrievals;
+
+    <T extends VectorSearch & TextSearch> ToolSearchOperations(T delegate,
+                                                              ModelConcurrencyLimiter concurrencyLimiter,
+                                                              TurnRetrievals retrievals) {
+        this.vectorSearch = delegate;
+        this.textSearch = delegate;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.retrievals = retrievals;
+    }
+
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> vectorSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                         @NotNull Class<T> clazz) {
+        var results = concurrencyLimiter.outsideModelCall(() -> vectorSearch.vectorSearch(request, clazz));
+        retrievals.sourcesFound(results);
+        return results;
+    }
+
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> textSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                       @NotNull Class<T> clazz) {
+        var results = concurrencyLimiter.outsideModelCall(() -> textSearch.textSearch(request, clazz));
+        retrievals.sourcesFound(results);
+        return results;
+    }
+
+    @NotNull
+    @Override
+    public String getLuceneSyntaxNotes() {
+        return textSearch.getLuceneSyntaxNotes();
+    }
+
+    @Override
+    public boolean supportsType(@NotNull String type) {
+        return vectorSearch.supportsType(type);
+    }
+}
@@ -0,0 +1,43 @@
+package dev.jettro.knowledge.chat;
+
+import com.embabel.agent.rag.model.Chunk;
+import com.embabel.common.core.types.SimilarityResult;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the tools found during one chat turn: the chunks of the sources the model was given, and whether it was given
+ * memories of the user. Tools can run on other threads, so the recording is thread-safe.
+ */
+class TurnRetrievals {
+    private final Set<String> chunkIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean memoryFound;
+
+    void sourcesFound(Collection<? extends SimilarityResult<?>> results) {
+        for (SimilarityResult<?> result : results) {
+            if (result.getMatch() instanceof Chunk chunk) {
+                chunkIds.add(chunk.getId());
+            }
+        }
+    }
+
+    void memoryFound(boolean found) {
+        if (found) {
+            memoryFound = true;
+        }
+    }
+
+    /**
+     * IDs of the chunks the model was given, sorted.
+     */
+    Set<String> chunkIds() {
+        return new TreeSet<>(chunkIds);
+    }
+
+    boolean memoryFound() {
+        return memoryFound;
+    }
+}
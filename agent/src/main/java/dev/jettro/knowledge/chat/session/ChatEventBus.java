@@ -0,0 +1,25 @@
+package dev.jettro.knowledge.chat.session;
+
+import com.embabel.agent.api.channel.OutputChannelEvent;
+
+import java.util.function.Consumer;
+
+/**
+ * Publish/subscribe channel for the output events of chat sessions. The node that runs a chat turn publishes the
+ * events under the ID of the user, the node that holds the SSE connection of that user subscribes to them. An
+ * implementation that spans nodes has to serialize the events.
+ */
+public interface ChatEventBus {
+
+    void publish(String userId, OutputChannelEvent event);
+
+    /**
+     * Subscribes to the events of a user, closing the returned subscription stops the delivery.
+     */
+    Subscription subscribe(String userId, Consumer<OutputChannelEvent> subscriber);
+
+    interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
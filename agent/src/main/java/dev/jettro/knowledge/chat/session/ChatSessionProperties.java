@@ -0,0 +1,16 @@
+package dev.jettro.knowledge.chat.session;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Configuration for storing chat sessions outside the node that runs them.
+ *
+ * @param path Directory of the file based session store, every instance behind the load balancer must share it.
+ */
+@ConfigurationProperties(prefix = "knowledge.chat.sessions")
+public record ChatSessionProperties(
+        @DefaultValue("./.chat-sessions") Path path) {
+}
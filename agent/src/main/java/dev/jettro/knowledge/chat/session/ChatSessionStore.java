@@ -0,0 +1,26 @@
+package dev.jettro.knowledge.chat.session;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Storage for chat sessions that is shared by all instances of the application. Any instance can continue a session
+ * that was started on another one.
+ */
+public interface ChatSessionStore {
+
+    Optional<StoredChatSession> find(String userId);
+
+    /**
+     * When the session of the user was last written to the store, changes with every save on any instance. Used to
+     * check whether a session that was loaded before is still current, stores should answer it without reading the
+     * session.
+     */
+    default Optional<Instant> lastModified(String userId) {
+        return find(userId).map(StoredChatSession::updatedAt);
+    }
+
+    void save(StoredChatSession session);
+
+    void remove(String userId);
+}
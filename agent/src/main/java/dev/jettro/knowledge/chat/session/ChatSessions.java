@@ -0,0 +1,179 @@
+package dev.jettro.knowledge.chat.session;
+
+import com.embabel.agent.core.AgentPlatform;
+import com.embabel.chat.ChatSession;
+import com.embabel.chat.Chatbot;
+import dev.jettro.knowledge.chat.ConversationAnalysisRequestEvent;
+import dev.jettro.knowledge.chat.SseChannelProperties;
+import dev.jettro.knowledge.chat.SseEmitterOutputChannel;
+import dev.jettro.knowledge.security.KnowledgeUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Finds the chat session of a user on this node, without relying on the node that started it.
+ * <p>
+ * The conversation lives in the {@link ChatSessionStore}, the agent process that runs it is local. When a request
+ * arrives for a user without a local process, or the stored conversation was changed by another node since the
+ * local process was created, a new local process is created and the stored messages are added to its conversation.
+ * The process it replaces is killed. The conversation is saved after every exchange.
+ * </p>
+ * <p>
+ * Whether a local process is still current is checked with the modification time of the stored session, so the
+ * conversation is only read from the store when it is restored. Sessions are created under a lock per user.
+ * </p>
+ * <p>
+ * Sessions send their output to the {@link ChatEventBus}. The SSE channel of a user subscribes to the bus on the
+ * node the client is connected to, so the node that runs a turn and the node that streams it can differ.
+ * </p>
+ */
+@Component
+public class ChatSessions {
+    private static final Logger logger = LoggerFactory.getLogger(ChatSessions.class);
+
+    private final Chatbot chatbot;
+    private final AgentPlatform agentPlatform;
+    private final ChatSessionStore store;
+    private final ChatEventBus eventBus;
+    private final SseChannelProperties channelProperties;
+    private final Map<String, LocalSession> localSessions = new ConcurrentHashMap<>();
+    private final Map<String, SseEmitterOutputChannel> clientChannels = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> userLocks = new ConcurrentHashMap<>();
+
+    public ChatSessions(Chatbot chatbot,
+                        AgentPlatform agentPlatform,
+                        ChatSessionStore store,
+                        ChatEventBus eventBus,
+                        SseChannelProperties channelProperties) {
+        this.chatbot = chatbot;
+        this.agentPlatform = agentPlatform;
+        this.store = store;
+        this.eventBus = eventBus;
+        this.channelProperties = channelProperties;
+    }
+
+    /**
+     * The session of the user on this node, restored from the store or started when the user has none yet.
+     */
+    public ChatSession sessionFor(KnowledgeUser user) {
+        var session = currentSession(user.getId());
+        if (session != null) {
+            return session;
+        }
+        var lock = userLocks.computeIfAbsent(user.getId(), id -> new ReentrantLock());
+        lock.lock();
+        try {
+            return createSession(user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ID of the conversation of the user as it is known to the client, the same on every node.
+     */
+    public String conversationIdOf(KnowledgeUser user) {
+        var local = localSessions.get(user.getId());
+        if (local == null) {
+            sessionFor(user);
+            local = localSessions.get(user.getId());
+        }
+        return local.conversationId();
+    }
+
+    /**
+     * The SSE channel for the clients of the user that are connected to this node.
+     */
+    public SseEmitterOutputChannel clientChannelFor(String userId) {
+        return clientChannels.computeIfAbsent(userId, id -> {
+            var channel = new SseEmitterOutputChannel(channelProperties);
+            eventBus.subscribe(id, channel::send);
+            return channel;
+        });
+    }
+
+    @EventListener
+    public void onExchange(ConversationAnalysisRequestEvent event) {
+        var userId = event.user.getId();
+        var local = localSessions.get(userId);
+        if (local == null) {
+            logger.warn("Exchange for user {} without a local session, not saving it", userId);
+            return;
+        }
+        var saved = StoredChatSession.start(userId, local.conversationId()).withMessagesOf(event.conversation);
+        store.save(saved);
+        localSessions.put(userId, new LocalSession(local.processId(), local.conversationId(),
+                store.lastModified(userId).orElse(null)));
+    }
+
+    /**
+     * The local session of the user when it is still in sync with the store, or {@code null}.
+     */
+    private ChatSession currentSession(String userId) {
+        var local = localSessions.get(userId);
+        if (local == null) {
+            return null;
+        }
+        var storedAt = store.lastModified(userId);
+        if (storedAt.isEmpty() || !storedAt.get().equals(local.storedAt())) {
+            return null;
+        }
+        return chatbot.findSession(local.processId());
+    }
+
+    /**
+     * Creates the local session of the user, called with the lock of the user held.
+     */
+    private ChatSession createSession(KnowledgeUser user) {
+        // Another request of the same user may have created the session while this one waited
+        var current = currentSession(user.getId());
+        if (current != null) {
+            return current;
+        }
+
+        var stored = store.find(user.getId());
+        var toRestore = stored.orElseGet(() -> StoredChatSession.start(user.getId(), UUID.randomUUID().toString()));
+        if (stored.isEmpty()) {
+            store.save(toRestore);
+        }
+
+        // Subscribe before the session exists, so events are buffered until the client connects
+        clientChannelFor(user.getId());
+        var session = chatbot.createSession(user, new PublishingOutputChannel(eventBus, user.getId()), null, null);
+        toRestore.messages().forEach(message -> session.getConversation().addMessage(message.toMessage()));
+        var previous = localSessions.put(user.getId(), new LocalSession(session.getProcessId(),
+                toRestore.conversationId(), store.lastModified(user.getId()).orElse(null)));
+        if (previous != null) {
+            killProcess(previous.processId());
+        }
+
+        logger.info("Created process {} for conversation {} of user {} with {} restored messages",
+                session.getProcessId(), toRestore.conversationId(), user.getId(), toRestore.messages().size());
+        return session;
+    }
+
+    private void killProcess(String processId) {
+        try {
+            if (agentPlatform.killAgentProcess(processId) != null) {
+                logger.info("Killed process {}, its conversation was restored in a new process", processId);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not kill process {}", processId, e);
+        }
+    }
+
+    /**
+     * The agent process running the conversation on this node, and the modification time of the stored session it
+     * is in sync with.
+     */
+    private record LocalSession(String processId, String conversationId, Instant storedAt) {
+    }
+}
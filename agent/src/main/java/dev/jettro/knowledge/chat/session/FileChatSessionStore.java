@@ -0,0 +1,85 @@
+package dev.jettro.knowledge.chat.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * {@link ChatSessionStore} that writes a JSON file per user to a directory. Files are replaced with an atomic move,
+ * so a reader on another instance sees either the previous or the new version of a session. Put the directory on a
+ * shared volume to run several instances.
+ */
+public class FileChatSessionStore implements ChatSessionStore {
+    private static final Logger logger = LoggerFactory.getLogger(FileChatSessionStore.class);
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+
+    public FileChatSessionStore(ChatSessionProperties properties, ObjectMapper objectMapper) {
+        this.directory = properties.path();
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Optional<StoredChatSession> find(String userId) {
+        var file = fileOf(userId);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(file.toFile(), StoredChatSession.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read chat session " + file, e);
+        }
+    }
+
+    @Override
+    public Optional<Instant> lastModified(String userId) {
+        var file = fileOf(userId);
+        try {
+            return Optional.of(Files.getLastModifiedTime(file).toInstant());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the modification time of chat session " + file, e);
+        }
+    }
+
+    @Override
+    public void save(StoredChatSession session) {
+        var file = fileOf(session.userId());
+        try {
+            Files.createDirectories(directory);
+            var tempFile = Files.createTempFile(directory, "session", ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), session);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write chat session " + file, e);
+        }
+        logger.debug("Saved chat session of user {} with {} messages", session.userId(), session.messages().size());
+    }
+
+    @Override
+    public void remove(String userId) {
+        try {
+            Files.deleteIfExists(fileOf(userId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove chat session of user " + userId, e);
+        }
+    }
+
+    private Path fileOf(String userId) {
+        return directory.resolve(URLEncoder.encode(userId, StandardCharsets.UTF_8) + ".json");
+    }
+}
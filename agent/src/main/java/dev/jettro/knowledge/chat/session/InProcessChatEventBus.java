@@ -0,0 +1,45 @@
+package dev.jettro.knowledge.chat.session;
+
+import com.embabel.agent.api.channel.OutputChannelEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * {@link ChatEventBus} that delivers events to subscribers in the same JVM, on the thread of the publisher. Enough
+ * for a single instance, and the stand-in for a broker when running several.
+ */
+public class InProcessChatEventBus implements ChatEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(InProcessChatEventBus.class);
+
+    private final Map<String, Set<Consumer<OutputChannelEvent>>> subscribers = new ConcurrentHashMap<>();
+
+    @Override
+    public void publish(String userId, OutputChannelEvent event) {
+        var forUser = subscribers.get(userId);
+        if (forUser == null || forUser.isEmpty()) {
+            logger.debug("No subscribers for events of user {}, dropping {}", userId, event.getClass().getSimpleName());
+            return;
+        }
+        for (Consumer<OutputChannelEvent> subscriber : forUser) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException e) {
+                logger.warn("Subscriber for events of user {} failed", userId, e);
+            }
+        }
+    }
+
+    @Override
+    public Subscription subscribe(String userId, Consumer<OutputChannelEvent> subscriber) {
+        subscribers.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        return () -> subscribers.computeIfPresent(userId, (id, forUser) -> {
+            forUser.remove(subscriber);
+            return forUser.isEmpty() ? null : forUser;
+        });
+    }
+}
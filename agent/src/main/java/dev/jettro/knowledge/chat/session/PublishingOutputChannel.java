@@ -0,0 +1,24 @@
+package dev.jettro.knowledge.chat.session;
+
+import com.embabel.agent.api.channel.OutputChannel;
+import com.embabel.agent.api.channel.OutputChannelEvent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Output channel of a chat session that publishes the events on the {@link ChatEventBus}, so they reach the client
+ * whichever node it is connected to.
+ */
+public class PublishingOutputChannel implements OutputChannel {
+    private final ChatEventBus eventBus;
+    private final String userId;
+
+    public PublishingOutputChannel(ChatEventBus eventBus, String userId) {
+        this.eventBus = eventBus;
+        this.userId = userId;
+    }
+
+    @Override
+    public void send(@NotNull OutputChannelEvent event) {
+        eventBus.publish(userId, event);
+    }
+}
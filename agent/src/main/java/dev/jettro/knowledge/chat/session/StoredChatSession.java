@@ -0,0 +1,46 @@
+package dev.jettro.knowledge.chat.session;
+
+import com.embabel.chat.AssistantMessage;
+import com.embabel.chat.Conversation;
+import com.embabel.chat.Role;
+import com.embabel.chat.SystemMessage;
+import com.embabel.chat.UserMessage;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The state of a chat session that is needed to continue it on another node.
+ *
+ * @param userId         The user the session belongs to, a user has one session.
+ * @param conversationId ID of the conversation as the client knows it, it stays the same on every node.
+ * @param messages       The messages of the conversation in order.
+ * @param updatedAt      Moment the session was last saved.
+ */
+public record StoredChatSession(String userId, String conversationId, List<StoredMessage> messages, Instant updatedAt) {
+
+    public static StoredChatSession start(String userId, String conversationId) {
+        return new StoredChatSession(userId, conversationId, List.of(), Instant.now());
+    }
+
+    /**
+     * Copy of this session with the messages of the conversation.
+     */
+    public StoredChatSession withMessagesOf(Conversation conversation) {
+        var stored = conversation.getMessages().stream()
+                .map(message -> new StoredMessage(message.getRole(), message.getContent()))
+                .toList();
+        return new StoredChatSession(userId, conversationId, stored, Instant.now());
+    }
+
+    public record StoredMessage(Role role, String content) {
+
+        public com.embabel.chat.Message toMessage() {
+            return switch (role) {
+                case USER -> new UserMessage(content);
+                case ASSISTANT -> new AssistantMessage(content);
+                case SYSTEM -> new SystemMessage(content);
+            };
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package dev.jettro.knowledge.embedding;
+
+import com.embabel.common.ai.model.EmbeddingService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * {@link EmbeddingService} decorator that collects concurrent single-text requests into one batched provider call.
+ * <p>
+ * The first request that arrives starts a short wait of {@code maxWait}, every request that arrives in that window
+ * joins the batch. A batch is sent as soon as it is full or the wait is over. Requests for a text that is already
+ * waiting or being embedded share the pending result instead of adding the text again.
+ * </p>
+ * <p>
+ * Batches are sent from a small pool of threads, which also caps the number of concurrent calls to the provider.
+ * When all threads are busy and {@code maxQueuedBatches} batches are waiting, the thread that completes the next batch
+ * sends it itself, which slows down new requests instead of queueing without limit. A batch completed by the end of
+ * its wait is handed from the timer to a virtual thread first, so a provider call never runs on the timer thread and
+ * never holds up the flushes of other batches. Calls that already contain a full batch of texts go to the provider
+ * directly.
+ * </p>
+ * <p>
+ * Callers wait at most {@code requestTimeout} for their embedding.
+ * </p>
+ */
+public class BatchingEmbeddingService implements EmbeddingService, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BatchingEmbeddingService.class);
+
+    private record PendingText(String text, CompletableFuture<float[]> result) {
+    }
+
+    private final EmbeddingService delegate;
+    private final EmbeddingBatchingProperties properties;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService flushers;
+    private final ExecutorService dispatcher;
+    private final Map<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+    private List<PendingText> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private final Counter coalesced;
+    private final DistributionSummary batchSizes;
+
+    public BatchingEmbeddingService(EmbeddingService delegate,
+                                    EmbeddingBatchingProperties properties,
+                                    MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("embedding-batcher").daemon().factory());
+        this.flushers = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("embedding-flush-", 0).factory());
+        this.dispatcher = new ThreadPoolExecutor(properties.maxConcurrentBatches(), properties.maxConcurrentBatches(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.maxQueuedBatches()),
+                Thread.ofPlatform().name("embedding-dispatch-", 0).daemon().factory(),
+                (batch, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Embedding batcher is closed");
+                    }
+                    batch.run();
+                });
+        this.coalesced = Counter.builder("knowledge.embedding.coalesced")
+                .description("Embedding requests that shared the result of an identical in-flight request")
+                .tag("model", delegate.getName())
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("knowledge.embedding.batch.size")
+                .description("Number of texts per batched embedding call")
+                .tag("model", delegate.getName())
+                .register(meterRegistry);
+    }
+
+    @NotNull
+    @Override
+    public float[] embed(@NotNull String text) {
+        return await(submit(text));
+    }
+
+    @NotNull
+    @Override
+    public List<float[]> embed(@NotNull List<String> texts) {
+        if (texts.size() >= properties.maxBatchSize()) {
+            batchSizes.record(texts.size());
+            return delegate.embed(texts);
+        }
+
+        var results = texts.stream().map(this::submit).toList();
+        return results.stream().map(this::await).toList();
+    }
+
+    private CompletableFuture<float[]> submit(String text) {
+        var created = new CompletableFuture<float[]>();
+        var existing = inFlight.putIfAbsent(text, created);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        List<PendingText> fullBatch = null;
+        synchronized (lock) {
+            pending.add(new PendingText(text, created));
+            if (pending.size() >= properties.maxBatchSize()) {
+                fullBatch = drainPending();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::startFlush, properties.maxWait().toNanos(),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            dispatch(fullBatch);
+        }
+        return created;
+    }
+
+    /**
+     * Runs on the timer thread, which only hands the flush over. Dispatching can run the batch on the calling thread
+     * when the dispatcher is saturated.
+     */
+    private void startFlush() {
+        try {
+            flushers.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            List<PendingText> batch;
+            synchronized (lock) {
+                batch = drainPending();
+            }
+            fail(batch, e);
+        }
+    }
+
+    private void flush() {
+        List<PendingText> batch;
+        synchronized (lock) {
+            batch = drainPending();
+        }
+        dispatch(batch);
+    }
+
+    private List<PendingText> drainPending() {
+        var batch = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(List<PendingText> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            dispatcher.execute(() -> embedBatch(batch));
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+
+    private void embedBatch(List<PendingText> batch) {
+        try {
+            batchSizes.record(batch.size());
+            var embeddings = delegate.embed(batch.stream().map(PendingText::text).toList());
+            if (embeddings.size() != batch.size()) {
+                throw new IllegalStateException("Expected %d embeddings, received %d"
+                        .formatted(batch.size(), embeddings.size()));
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                var pendingText = batch.get(i);
+                inFlight.remove(pendingText.text(), pendingText.result());
+                pendingText.result().complete(embeddings.get(i));
+            }
+        } catch (Throwable e) {
+            // Also errors, a future that is never completed would block its callers until they time out
+            logger.warn("Batched embedding call for {} texts failed", batch.size(), e);
+            fail(batch, e);
+        }
+    }
+
+    private void fail(List<PendingText> batch, Throwable e) {
+        for (PendingText pendingText : batch) {
+            inFlight.remove(pendingText.text(), pendingText.result());
+            pendingText.result().completeExceptionally(e);
+        }
+    }
+
+    private float[] await(CompletableFuture<float[]> result) {
+        try {
+            return result.get(properties.requestTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Batched embedding call failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("No embedding received within " + properties.requestTimeout(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an embedding", e);
+        }
+    }
+
+    @Override
+    public int getDimensions() {
+        return delegate.getDimensions();
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @NotNull
+    @Override
+    public String getProvider() {
+        return delegate.getProvider();
+    }
+
+    @NotNull
+    @Override
+    public EmbeddingModel getModel() {
+        return delegate.getModel();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        flushers.shutdown();
+        dispatcher.shutdown();
+    }
+}
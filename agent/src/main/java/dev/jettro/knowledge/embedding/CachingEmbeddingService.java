@@ -0,0 +1,113 @@
+package dev.jettro.knowledge.embedding;
+
+import com.embabel.common.ai.model.EmbeddingService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link EmbeddingService} decorator that serves embeddings from an {@link EmbeddingCacheStore} and only calls the
+ * delegate for texts that were not embedded before by the same model.
+ * <p>
+ * Batch calls look up every text first and send the misses to the delegate in a single call. Hits and misses are
+ * counted in the {@code knowledge.embedding.cache} meter, tagged with the model name.
+ * </p>
+ */
+public class CachingEmbeddingService implements EmbeddingService {
+
+    private final EmbeddingService delegate;
+    private final EmbeddingCacheStore store;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingEmbeddingService(EmbeddingService delegate, EmbeddingCacheStore store, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.store = store;
+        this.hits = Counter.builder("knowledge.embedding.cache")
+                .tag("model", delegate.getName())
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("knowledge.embedding.cache")
+                .tag("model", delegate.getName())
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("knowledge.embedding.cache.size", store, EmbeddingCacheStore::size)
+                .tag("model", delegate.getName())
+                .register(meterRegistry);
+        FunctionCounter.builder("knowledge.embedding.cache.evictions", store, EmbeddingCacheStore::evictions)
+                .tag("model", delegate.getName())
+                .register(meterRegistry);
+    }
+
+    @NotNull
+    @Override
+    public float[] embed(@NotNull String text) {
+        var cached = store.get(getName(), text);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        var embedding = delegate.embed(text);
+        store.put(getName(), text, embedding);
+        return embedding;
+    }
+
+    @NotNull
+    @Override
+    public List<float[]> embed(@NotNull List<String> texts) {
+        var embeddings = new float[texts.size()][];
+        var missingIndexes = new ArrayList<Integer>();
+        var missingTexts = new ArrayList<String>();
+
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings[i] = store.get(getName(), texts.get(i));
+            if (embeddings[i] == null) {
+                missingIndexes.add(i);
+                missingTexts.add(texts.get(i));
+            }
+        }
+        hits.increment(texts.size() - missingTexts.size());
+        misses.increment(missingTexts.size());
+
+        if (!missingTexts.isEmpty()) {
+            var computed = delegate.embed(missingTexts);
+            for (int i = 0; i < computed.size(); i++) {
+                embeddings[missingIndexes.get(i)] = computed.get(i);
+                store.put(getName(), missingTexts.get(i), computed.get(i));
+            }
+        }
+        return Arrays.asList(embeddings);
+    }
+
+    @Override
+    public int getDimensions() {
+        return delegate.getDimensions();
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @NotNull
+    @Override
+    public String getProvider() {
+        return delegate.getProvider();
+    }
+
+    @NotNull
+    @Override
+    public EmbeddingModel getModel() {
+        return delegate.getModel();
+    }
+}
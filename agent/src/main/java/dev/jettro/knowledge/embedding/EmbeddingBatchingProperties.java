@@ -0,0 +1,27 @@
+package dev.jettro.knowledge.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration for combining concurrent embedding requests into batched provider calls.
+ *
+ * @param enabled               Whether single-text requests are batched at all.
+ * @param maxBatchSize          Maximum number of texts sent to the provider in one call.
+ * @param maxWait               How long the first request in a batch waits for others to join.
+ * @param maxConcurrentBatches  Maximum number of batch calls running against the provider at the same time.
+ * @param maxQueuedBatches      Maximum number of batches waiting for a free call, beyond that requests are slowed
+ *                              down until a call completes.
+ * @param requestTimeout        How long a request waits for its embedding before it fails.
+ */
+@ConfigurationProperties(prefix = "knowledge.embedding.batching")
+public record EmbeddingBatchingProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("64") int maxBatchSize,
+        @DefaultValue("5ms") Duration maxWait,
+        @DefaultValue("4") int maxConcurrentBatches,
+        @DefaultValue("16") int maxQueuedBatches,
+        @DefaultValue("60s") Duration requestTimeout) {
+}
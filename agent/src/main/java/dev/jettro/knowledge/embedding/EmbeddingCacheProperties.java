@@ -0,0 +1,20 @@
+package dev.jettro.knowledge.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Configuration for the persistent embedding cache.
+ *
+ * @param enabled    Whether embeddings are cached at all.
+ * @param path       File that stores the cached embeddings.
+ * @param maxEntries Maximum number of embeddings kept, the least recently used ones are evicted first.
+ */
+@ConfigurationProperties(prefix = "knowledge.embedding.cache")
+public record EmbeddingCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("./.embedding-cache/embeddings.bin") Path path,
+        @DefaultValue("50000") int maxEntries) {
+}
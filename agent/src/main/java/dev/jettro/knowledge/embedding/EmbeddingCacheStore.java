@@ -0,0 +1,269 @@
+package dev.jettro.knowledge.embedding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Disk-backed store for embeddings, keyed by the SHA-256 of the model name and the embedded text.
+ * <p>
+ * Vectors live in an append-only file, only the key and file offset of each entry are kept on the heap. The index is
+ * ordered by access, when it grows beyond the maximum number of entries the least recently used entry is dropped.
+ * The space of dropped and overwritten entries is reclaimed by rewriting the file once it holds twice as many records
+ * as the index. On startup the index is rebuilt by scanning the file, a partially written record at the end is
+ * truncated.
+ * </p>
+ * <p>
+ * Lookups only hold the lock on the in-memory index while they find the entry, the vector is read from the file with
+ * a positional read under a shared lock, so concurrent lookups do not wait for each other. Writes and compaction take
+ * the exclusive lock.
+ * </p>
+ */
+public class EmbeddingCacheStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingCacheStore.class);
+
+    private static final int KEY_LENGTH = 32;
+    private static final int RECORD_HEADER_LENGTH = KEY_LENGTH + Integer.BYTES;
+
+    private record Location(long offset, int dimensions) {
+    }
+
+    private final Path path;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Location> index;
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private FileChannel channel;
+    private long writePosition;
+    private long recordsInFile;
+
+    public EmbeddingCacheStore(Path path, int maxEntries) throws IOException {
+        this.path = path;
+        this.maxEntries = maxEntries;
+        this.index = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Location> eldest) {
+                if (size() > EmbeddingCacheStore.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = open(path);
+        load();
+    }
+
+    /**
+     * Returns the cached embedding for the text, or {@code null} when it is not in the cache.
+     */
+    public float[] get(String model, String text) {
+        var key = key(model, text);
+        fileLock.readLock().lock();
+        try {
+            Location location;
+            synchronized (index) {
+                location = index.get(key);
+            }
+            if (location == null) {
+                return null;
+            }
+            return readVector(location);
+        } catch (IOException e) {
+            logger.warn("Could not read cached embedding, treating it as a miss", e);
+            synchronized (index) {
+                index.remove(key);
+            }
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    public void put(String model, String text, float[] vector) {
+        var key = key(model, text);
+        fileLock.writeLock().lock();
+        try {
+            var buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH + vector.length * Float.BYTES);
+            buffer.put(HexFormat.of().parseHex(key));
+            buffer.putInt(vector.length);
+            buffer.asFloatBuffer().put(vector);
+            buffer.position(buffer.capacity()).flip();
+
+            var offset = writePosition;
+            while (buffer.hasRemaining()) {
+                writePosition += channel.write(buffer, writePosition);
+            }
+            recordsInFile++;
+            int size;
+            synchronized (index) {
+                index.put(key, new Location(offset + RECORD_HEADER_LENGTH, vector.length));
+                size = index.size();
+            }
+
+            if (recordsInFile > 2L * Math.max(size, maxEntries / 2)) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write embedding to the cache", e);
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    /**
+     * Number of entries dropped to stay within the maximum number of entries since the cache was opened.
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileLock.writeLock().lock();
+        try {
+            channel.force(true);
+            channel.close();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    private float[] readVector(Location location) throws IOException {
+        var buffer = ByteBuffer.allocate(location.dimensions() * Float.BYTES);
+        var position = location.offset();
+        while (buffer.hasRemaining()) {
+            var read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Embedding cache file is shorter than expected");
+            }
+        }
+        buffer.flip();
+        var vector = new float[location.dimensions()];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private void load() throws IOException {
+        var size = channel.size();
+        var header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        long position = 0;
+        while (position + RECORD_HEADER_LENGTH <= size) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, position + header.position()) > 0) {
+                // keep reading until the header is complete
+            }
+            header.flip();
+            var keyBytes = new byte[KEY_LENGTH];
+            header.get(keyBytes);
+            var dimensions = header.getInt();
+            var recordLength = RECORD_HEADER_LENGTH + (long) dimensions * Float.BYTES;
+            if (dimensions <= 0 || position + recordLength > size) {
+                break;
+            }
+            index.put(HexFormat.of().formatHex(keyBytes), new Location(position + RECORD_HEADER_LENGTH, dimensions));
+            recordsInFile++;
+            position += recordLength;
+        }
+        if (position < size) {
+            logger.warn("Truncating {} bytes of incomplete data at the end of the embedding cache", size - position);
+            channel.truncate(position);
+        }
+        writePosition = position;
+        evictions.set(0);
+        logger.info("Loaded embedding cache from {} with {} entries", path, index.size());
+    }
+
+    /**
+     * Rewrites the file with only the live entries. Called with the exclusive lock held, so no lookup reads the file
+     * while it is replaced.
+     */
+    private void compact() throws IOException {
+        Map<String, Location> entries;
+        synchronized (index) {
+            entries = new LinkedHashMap<>(index);
+        }
+        logger.info("Compacting embedding cache, {} records in file for {} live entries",
+                recordsInFile, entries.size());
+        var tempPath = path.resolveSibling(path.getFileName() + ".compact");
+        var live = new LinkedHashMap<String, Location>(entries.size());
+        try (var target = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (var entry : entries.entrySet()) {
+                var location = entry.getValue();
+                var recordLength = RECORD_HEADER_LENGTH + (long) location.dimensions() * Float.BYTES;
+                transfer(location.offset() - RECORD_HEADER_LENGTH, recordLength, target);
+                live.put(entry.getKey(), new Location(position + RECORD_HEADER_LENGTH, location.dimensions()));
+                position += recordLength;
+            }
+            target.force(true);
+            writePosition = position;
+        }
+        channel.close();
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open(path);
+
+        // Re-inserting in iteration order keeps the access order of the old index
+        synchronized (index) {
+            index.clear();
+            index.putAll(live);
+        }
+        recordsInFile = live.size();
+    }
+
+    /**
+     * Copies a record to the target, {@link FileChannel#transferTo} may copy fewer bytes than asked for.
+     */
+    private void transfer(long position, long length, FileChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            var count = channel.transferTo(position + transferred, length - transferred, target);
+            if (count <= 0) {
+                throw new EOFException("Embedding cache file is shorter than expected");
+            }
+            transferred += count;
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static String key(String model, String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package dev.jettro.knowledge.embedding;
+
+import com.embabel.common.ai.model.ByRoleModelSelectionCriteria;
+import com.embabel.common.ai.model.EmbeddingService;
+import com.embabel.common.ai.model.ModelProvider;
+import dev.jettro.knowledge.chat.model.Roles;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out the embedding services for a model role, wrapped with the embedding cache and request batching when they
+ * are enabled. Cache hits are returned right away, only misses are collected into batches for the provider.
+ * <p>
+ * All components that embed text should obtain their service here, so they share one cache and one batcher. The
+ * decorated services are deliberately not registered as {@link EmbeddingService} beans, the {@link ModelProvider}
+ * collects those.
+ * </p>
+ */
+@Component
+public class EmbeddingServices {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingServices.class);
+
+    private final ModelProvider modelProvider;
+    private final EmbeddingCacheProperties cacheProperties;
+    private final EmbeddingBatchingProperties batchingProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<Roles, EmbeddingService> services = new ConcurrentHashMap<>();
+    private final List<BatchingEmbeddingService> batchers = new ArrayList<>();
+
+    private EmbeddingCacheStore cacheStore;
+
+    public EmbeddingServices(ModelProvider modelProvider,
+                             EmbeddingCacheProperties cacheProperties,
+                             EmbeddingBatchingProperties batchingProperties,
+                             MeterRegistry meterRegistry) {
+        this.modelProvider = modelProvider;
+        this.cacheProperties = cacheProperties;
+        this.batchingProperties = batchingProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public EmbeddingService byRole(Roles role) {
+        return services.computeIfAbsent(role, this::create);
+    }
+
+    private EmbeddingService create(Roles role) {
+        var service = modelProvider.getEmbeddingService(ByRoleModelSelectionCriteria.Companion.byRole(role.name()));
+        if (batchingProperties.enabled()) {
+            logger.info("Batching embedding requests to {} for role {}", service.getName(), role.name());
+            var batcher = new BatchingEmbeddingService(service, batchingProperties, meterRegistry);
+            synchronized (batchers) {
+                batchers.add(batcher);
+            }
+            service = batcher;
+        }
+        if (cacheProperties.enabled()) {
+            logger.info("Caching embeddings of {} for role {}", service.getName(), role.name());
+            service = new CachingEmbeddingService(service, cacheStore(), meterRegistry);
+        }
+        return service;
+    }
+
+    private synchronized EmbeddingCacheStore cacheStore() {
+        if (cacheStore == null) {
+            try {
+                cacheStore = new EmbeddingCacheStore(cacheProperties.path(), cacheProperties.maxEntries());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open embedding cache " + cacheProperties.path(), e);
+            }
+        }
+        return cacheStore;
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        synchronized (batchers) {
+            batchers.forEach(BatchingEmbeddingService::close);
+        }
+        if (cacheStore != null) {
+            cacheStore.close();
+        }
+    }
+}
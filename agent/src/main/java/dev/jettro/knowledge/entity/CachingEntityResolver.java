@@ -0,0 +1,115 @@
+package dev.jettro.knowledge.entity;
+
+import com.embabel.agent.core.DataDictionary;
+import com.embabel.agent.rag.model.NamedEntityData;
+import com.embabel.agent.rag.service.NamedEntityDataRepository;
+import com.embabel.dice.common.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * {@link EntityResolver} decorator that remembers which entity a mention resolved to, so repeated mentions like
+ * "Java" or the name of the user skip the delegate chain.
+ * <p>
+ * The cache is a bounded LRU from the normalized mention and its labels to the resolved entity. Only mentions that
+ * resolved to an existing entity are cached. On a hit the current version of the entity is taken from the repository
+ * when it is stored there, entities that are not in the repository, like the current user, are used as cached.
+ * {@link #invalidate(String)} drops every mention of an entity that was deleted or merged into another one. Hits and
+ * misses are counted in the {@code knowledge.entities.resolution.cache} meter.
+ * </p>
+ */
+public class CachingEntityResolver implements EntityResolver {
+
+    private final EntityResolver delegate;
+    private final NamedEntityDataRepository repository;
+    private final Map<String, NamedEntityData> entitiesByMention;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingEntityResolver(EntityResolver delegate,
+                                 NamedEntityDataRepository repository,
+                                 int maxEntries,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.repository = repository;
+        this.entitiesByMention = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NamedEntityData> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.hits = meterRegistry.counter("knowledge.entities.resolution.cache", "result", "hit");
+        this.misses = meterRegistry.counter("knowledge.entities.resolution.cache", "result", "miss");
+    }
+
+    @NotNull
+    @Override
+    public Resolutions<SuggestedEntityResolution> resolve(@NotNull SuggestedEntities suggestedEntities,
+                                                          @NotNull DataDictionary schema) {
+        var suggested = suggestedEntities.getSuggestedEntities();
+        var resolutions = new SuggestedEntityResolution[suggested.size()];
+        var missingIndexes = new ArrayList<Integer>();
+        var missing = new ArrayList<SuggestedEntity>();
+
+        for (int i = 0; i < suggested.size(); i++) {
+            var cached = cachedEntity(suggested.get(i));
+            if (cached != null) {
+                var stored = repository.findById(cached.getId());
+                resolutions[i] = new ExistingEntity(suggested.get(i), stored != null ? stored : cached);
+            } else {
+                missingIndexes.add(i);
+                missing.add(suggested.get(i));
+            }
+        }
+        hits.increment(suggested.size() - missing.size());
+        misses.increment(missing.size());
+
+        var chunkIds = new HashSet<String>();
+        if (!missing.isEmpty()) {
+            var delegated = delegate.resolve(new SuggestedEntities(missing), schema);
+            chunkIds.addAll(delegated.getChunkIds());
+            for (int i = 0; i < missingIndexes.size(); i++) {
+                var resolution = delegated.getResolutions().get(i);
+                resolutions[missingIndexes.get(i)] = resolution;
+                if (resolution instanceof ExistingEntity existing) {
+                    remember(existing.getSuggested(), existing.getExisting());
+                }
+            }
+        }
+        for (SuggestedEntity entity : suggested) {
+            if (entity.getChunkId() != null) {
+                chunkIds.add(entity.getChunkId());
+            }
+        }
+        return new Resolutions<>(chunkIds, Arrays.asList(resolutions));
+    }
+
+    /**
+     * Forgets every mention that resolved to the entity, used when the entity was merged into another one.
+     */
+    public synchronized void invalidate(String entityId) {
+        entitiesByMention.values().removeIf(entity -> entity.getId().equals(entityId));
+    }
+
+    public synchronized int size() {
+        return entitiesByMention.size();
+    }
+
+    private synchronized NamedEntityData cachedEntity(SuggestedEntity suggested) {
+        return entitiesByMention.get(key(suggested));
+    }
+
+    private synchronized void remember(SuggestedEntity suggested, NamedEntityData entity) {
+        entitiesByMention.put(key(suggested), entity);
+    }
+
+    private static String key(SuggestedEntity suggested) {
+        var labels = suggested.getLabels() == null ? List.<String>of() : suggested.getLabels();
+        var sortedLabels = new TreeSet<String>();
+        labels.forEach(label -> sortedLabels.add(label.toLowerCase(Locale.ROOT)));
+        return EntityNameIndex.normalize(suggested.getName()) + "|" + String.join(",", sortedLabels);
+    }
+}
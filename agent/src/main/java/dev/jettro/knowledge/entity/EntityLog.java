@@ -0,0 +1,171 @@
+package dev.jettro.knowledge.entity;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jettro.knowledge.persistence.AppendOnlyLog;
+import dev.jettro.knowledge.persistence.LogSnapshot;
+import dev.jettro.knowledge.persistence.TypedValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * {@link AppendOnlyLog} of entity changes. Replaying the log gives the current entities, the last record for an ID
+ * wins. Properties are stored as {@link TypedValue}s, so they are read back with the type they were saved with.
+ * <p>
+ * At shutdown the live records are written to a binary {@link LogSnapshot}, which is read instead of the log at the
+ * next startup when the log did not change in between.
+ * </p>
+ */
+class EntityLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(EntityLog.class);
+
+    /**
+     * A stored entity, with its aliases and embedding, or the marker of a deleted entity.
+     */
+    record Record(String id,
+                  boolean deleted,
+                  String name,
+                  String description,
+                  Set<String> labels,
+                  Map<String, TypedValue> properties,
+                  Set<String> aliases,
+                  float[] embedding) {
+
+        static Record deleted(String id) {
+            return new Record(id, true, null, null, null, null, null, null);
+        }
+    }
+
+    private static final String SNAPSHOT_KIND = "entities";
+    private static final TypeReference<Map<String, TypedValue>> PROPERTIES_TYPE = new TypeReference<>() {
+    };
+
+    private final AppendOnlyLog<Record> log;
+    private final Path snapshotPath;
+    private final ObjectMapper objectMapper;
+
+    EntityLog(Path path, Path snapshotPath, ObjectMapper objectMapper) {
+        this.log = new AppendOnlyLog<>(path, Record.class, "entity log", objectMapper);
+        this.snapshotPath = snapshotPath;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reads the log and returns the live records by ID, in the order they were first written.
+     */
+    synchronized Map<String, Record> replay() {
+        var snapshot = LogSnapshot.read(snapshotPath, log.path(), SNAPSHOT_KIND, this::readSnapshot);
+        if (snapshot.isPresent()) {
+            return snapshot.get();
+        }
+        var records = new LinkedHashMap<String, Record>();
+        if (!log.exists()) {
+            logger.info("No entity log found at {}, starting with an empty entity store", log.path());
+            return records;
+        }
+        log.replay(record -> {
+            if (record.deleted()) {
+                records.remove(record.id());
+            } else {
+                records.put(record.id(), record);
+            }
+        });
+        return records;
+    }
+
+    synchronized void append(Record record) {
+        log.append(record);
+    }
+
+    /**
+     * Number of records in the log, including records that were overwritten or deleted later.
+     */
+    synchronized int lines() {
+        return log.lines();
+    }
+
+    /**
+     * Rewrites the log with only the given records.
+     */
+    synchronized void compact(Collection<Record> live) {
+        log.rewrite(live);
+    }
+
+    /**
+     * Writes the live records to the snapshot. Call it after the last change, the snapshot is ignored as soon as
+     * another record is appended to the log.
+     */
+    synchronized void snapshot(Collection<Record> live) {
+        try {
+            log.closeWriter();
+        } catch (IOException e) {
+            logger.warn("Could not close entity log {}, not writing a snapshot", log.path(), e);
+            return;
+        }
+        LogSnapshot.write(snapshotPath, log.path(), SNAPSHOT_KIND, out -> {
+            out.writeInt(log.lines());
+            out.writeInt(live.size());
+            for (Record record : live) {
+                LogSnapshot.writeString(out, record.id());
+                LogSnapshot.writeString(out, record.name());
+                LogSnapshot.writeString(out, record.description());
+                writeStrings(out, record.labels());
+                LogSnapshot.writeString(out, objectMapper.writeValueAsString(record.properties()));
+                writeStrings(out, record.aliases());
+                out.writeInt(record.embedding().length);
+                for (float value : record.embedding()) {
+                    out.writeFloat(value);
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    private Map<String, Record> readSnapshot(DataInputStream in) throws IOException {
+        int loggedLines = in.readInt();
+        int count = in.readInt();
+        var records = new LinkedHashMap<String, Record>(count * 2);
+        for (int i = 0; i < count; i++) {
+            var id = LogSnapshot.readString(in);
+            var name = LogSnapshot.readString(in);
+            var description = LogSnapshot.readString(in);
+            var labels = readStrings(in);
+            var properties = objectMapper.readValue(LogSnapshot.readString(in), PROPERTIES_TYPE);
+            var aliases = readStrings(in);
+            var embedding = new float[in.readInt()];
+            for (int j = 0; j < embedding.length; j++) {
+                embedding[j] = in.readFloat();
+            }
+            records.put(id, new Record(id, false, name, description, labels, properties, aliases, embedding));
+        }
+        log.restoredLines(loggedLines);
+        return records;
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            LogSnapshot.writeString(out, value);
+        }
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        var values = new HashSet<String>(count * 2);
+        for (int i = 0; i < count; i++) {
+            values.add(LogSnapshot.readString(in));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,241 @@
+package dev.jettro.knowledge.entity;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of the normalized names and aliases of entities, used to resolve mentions without a model call.
+ * <p>
+ * A lookup tries an exact match first, then a mention that is the leading word(s) of a name, like "Embabel" for
+ * "Embabel Agent Framework", and finally a fuzzy match on character trigrams, which catches small spelling
+ * differences. A lookup only returns a match when it points to a single entity with compatible labels, ambiguous
+ * mentions are left to the caller.
+ * </p>
+ */
+public class EntityNameIndex {
+
+    public enum MatchType {EXACT, PREFIX, FUZZY}
+
+    /**
+     * @param entityId ID of the matched entity.
+     * @param type     How the mention matched.
+     * @param score    1 for an exact match, the fraction of the name covered or the trigram similarity otherwise.
+     */
+    public record Match(String entityId, MatchType type, double score) {
+    }
+
+    private final int minPrefixLength;
+    private final double fuzzyThreshold;
+
+    private final NavigableMap<String, Set<String>> idsByName = new TreeMap<>();
+    private final Map<String, Set<String>> namesByTrigram = new HashMap<>();
+    private final Map<String, Set<String>> namesById = new HashMap<>();
+    private final Map<String, Set<String>> labelsById = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public EntityNameIndex(int minPrefixLength, double fuzzyThreshold) {
+        this.minPrefixLength = minPrefixLength;
+        this.fuzzyThreshold = fuzzyThreshold;
+    }
+
+    /**
+     * Adds or updates an entity. Aliases that were added before are kept.
+     */
+    public void put(String id, String name, Collection<String> labels) {
+        lock.writeLock().lock();
+        try {
+            labelsById.put(id, normalizedLabels(labels));
+            addName(id, normalize(name));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers another name for an entity, returns {@code false} when the entity already had it.
+     */
+    public boolean addAlias(String id, String alias) {
+        lock.writeLock().lock();
+        try {
+            return labelsById.containsKey(id) && addName(id, normalize(alias));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            labelsById.remove(id);
+            var names = namesById.remove(id);
+            if (names == null) {
+                return;
+            }
+            for (String name : names) {
+                var ids = idsByName.get(name);
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    idsByName.remove(name);
+                    for (String trigram : trigrams(name)) {
+                        var trigramNames = namesByTrigram.get(trigram);
+                        trigramNames.remove(name);
+                        if (trigramNames.isEmpty()) {
+                            namesByTrigram.remove(trigram);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Normalized names and aliases of the entity.
+     */
+    public Set<String> namesOf(String id) {
+        lock.readLock().lock();
+        try {
+            return Set.copyOf(namesById.getOrDefault(id, Set.of()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<Match> lookup(String mention, Collection<String> labels) {
+        var key = normalize(mention);
+        if (key.isEmpty()) {
+            return Optional.empty();
+        }
+        var wantedLabels = normalizedLabels(labels);
+
+        lock.readLock().lock();
+        try {
+            var exact = single(idsByName.getOrDefault(key, Set.of()), wantedLabels);
+            if (exact != null) {
+                return Optional.of(new Match(exact, MatchType.EXACT, 1.0));
+            }
+            var prefix = prefixMatch(key, wantedLabels);
+            if (prefix.isPresent()) {
+                return prefix;
+            }
+            return fuzzyMatch(key, wantedLabels);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Optional<Match> prefixMatch(String key, Set<String> wantedLabels) {
+        if (key.length() < minPrefixLength) {
+            return Optional.empty();
+        }
+        // Only whole words, so "java" does not match "javascript"
+        var candidates = new HashSet<String>();
+        String longestName = null;
+        for (var entry : idsByName.subMap(key + " ", true, key + " \uffff", true).entrySet()) {
+            candidates.addAll(entry.getValue());
+            if (longestName == null || entry.getKey().length() > longestName.length()) {
+                longestName = entry.getKey();
+            }
+        }
+        var id = single(candidates, wantedLabels);
+        return id == null
+                ? Optional.empty()
+                : Optional.of(new Match(id, MatchType.PREFIX, (double) key.length() / longestName.length()));
+    }
+
+    private Optional<Match> fuzzyMatch(String key, Set<String> wantedLabels) {
+        var keyTrigrams = trigrams(key);
+        var overlaps = new HashMap<String, Integer>();
+        for (String trigram : keyTrigrams) {
+            for (String name : namesByTrigram.getOrDefault(trigram, Set.of())) {
+                overlaps.merge(name, 1, Integer::sum);
+            }
+        }
+
+        double bestScore = 0;
+        Set<String> bestIds = Set.of();
+        for (var entry : overlaps.entrySet()) {
+            int overlap = entry.getValue();
+            double score = (double) overlap / (keyTrigrams.size() + trigrams(entry.getKey()).size() - overlap);
+            if (score > bestScore) {
+                bestScore = score;
+                bestIds = idsByName.get(entry.getKey());
+            } else if (score == bestScore) {
+                bestIds = union(bestIds, idsByName.get(entry.getKey()));
+            }
+        }
+        if (bestScore < fuzzyThreshold) {
+            return Optional.empty();
+        }
+        var id = single(bestIds, wantedLabels);
+        return id == null ? Optional.empty() : Optional.of(new Match(id, MatchType.FUZZY, bestScore));
+    }
+
+    private boolean addName(String id, String name) {
+        if (name.isEmpty() || !namesById.computeIfAbsent(id, key -> new HashSet<>()).add(name)) {
+            return false;
+        }
+        idsByName.computeIfAbsent(name, key -> new HashSet<>()).add(id);
+        for (String trigram : trigrams(name)) {
+            namesByTrigram.computeIfAbsent(trigram, key -> new HashSet<>()).add(name);
+        }
+        return true;
+    }
+
+    private String single(Set<String> ids, Set<String> wantedLabels) {
+        String found = null;
+        for (String id : ids) {
+            if (labelsCompatible(labelsById.getOrDefault(id, Set.of()), wantedLabels)) {
+                if (found != null) {
+                    return null;
+                }
+                found = id;
+            }
+        }
+        return found;
+    }
+
+    private static boolean labelsCompatible(Set<String> entityLabels, Set<String> wantedLabels) {
+        return entityLabels.isEmpty() || wantedLabels.isEmpty() || !Collections.disjoint(entityLabels, wantedLabels);
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        var union = new HashSet<>(a);
+        union.addAll(b);
+        return union;
+    }
+
+    private static Set<String> normalizedLabels(Collection<String> labels) {
+        if (labels == null) {
+            return Set.of();
+        }
+        var normalized = new HashSet<String>();
+        for (String label : labels) {
+            normalized.add(label.toLowerCase(Locale.ROOT));
+        }
+        return normalized;
+    }
+
+    private static Set<String> trigrams(String name) {
+        var padded = "$" + name + "$";
+        var trigrams = new HashSet<String>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Lower case, without accents and with every run of punctuation or whitespace collapsed to a single space.
+     */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        var decomposed = Normalizer.normalize(name, Normalizer.Form.NFKD).replaceAll("\\p{M}", "");
+        return decomposed.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}+#]+", " ").strip();
+    }
+}
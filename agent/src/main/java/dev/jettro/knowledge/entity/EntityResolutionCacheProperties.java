@@ -0,0 +1,16 @@
+package dev.jettro.knowledge.entity;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration for the per-user cache of resolved entity mentions.
+ *
+ * @param maxEntries Maximum number of mentions remembered per user, the least recently used ones are evicted first.
+ * @param maxUsers   Maximum number of users with a cache, the least recently active users are dropped first.
+ */
+@ConfigurationProperties(prefix = "knowledge.entities.resolution-cache")
+public record EntityResolutionCacheProperties(
+        @DefaultValue("512") int maxEntries,
+        @DefaultValue("1000") int maxUsers) {
+}
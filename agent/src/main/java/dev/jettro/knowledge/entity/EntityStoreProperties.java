@@ -0,0 +1,23 @@
+package dev.jettro.knowledge.entity;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Configuration for the persistent entity store and its name index.
+ *
+ * @param path            Append-only log that holds the entities, their aliases and embeddings.
+ * @param minPrefixLength Minimum length of a mention before it is matched as the prefix of an entity name.
+ * @param fuzzyThreshold  Minimum trigram similarity, between 0 and 1, for a fuzzy name match.
+ * @param snapshotPath    Binary snapshot of the entities, written at shutdown and read at startup instead of the log
+ *                        when the log did not change since.
+ */
+@ConfigurationProperties(prefix = "knowledge.entities.store")
+public record EntityStoreProperties(
+        @DefaultValue("./.entity-store/entities.jsonl") Path path,
+        @DefaultValue("4") int minPrefixLength,
+        @DefaultValue("0.5") double fuzzyThreshold,
+        @DefaultValue("./.entity-store/entities.snapshot") Path snapshotPath) {
+}
@@ -0,0 +1,77 @@
+package dev.jettro.knowledge.entity;
+
+import com.embabel.agent.core.DataDictionary;
+import com.embabel.dice.common.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Objects;
+
+/**
+ * {@link EntityResolver} that resolves mentions through the name index of the
+ * {@link PersistentNamedEntityDataRepository}, so known entities are found without a model call or a vector scan.
+ * <p>
+ * A mention that matched on a prefix or a fuzzy name is stored as an alias of the entity, the next mention with the
+ * same name is an exact match. Mentions that do not match a single entity become new entities. Resolutions are
+ * counted in the {@code knowledge.entities.resolution} meter, tagged with the kind of match.
+ * </p>
+ */
+public class IndexedEntityResolver implements EntityResolver {
+    private static final Logger logger = LoggerFactory.getLogger(IndexedEntityResolver.class);
+
+    private final PersistentNamedEntityDataRepository repository;
+    private final MeterRegistry meterRegistry;
+
+    public IndexedEntityResolver(PersistentNamedEntityDataRepository repository, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @NotNull
+    @Override
+    public Resolutions<SuggestedEntityResolution> resolve(@NotNull SuggestedEntities suggestedEntities,
+                                                          @NotNull DataDictionary schema) {
+        var resolutions = new ArrayList<SuggestedEntityResolution>();
+        var chunkIds = new HashSet<String>();
+        for (SuggestedEntity suggested : suggestedEntities.getSuggestedEntities()) {
+            if (suggested.getChunkId() != null) {
+                chunkIds.add(suggested.getChunkId());
+            }
+            resolutions.add(resolve(suggested));
+        }
+        return new Resolutions<>(chunkIds, resolutions);
+    }
+
+    private SuggestedEntityResolution resolve(SuggestedEntity suggested) {
+        if (suggested.getId() != null) {
+            var known = repository.findById(suggested.getId());
+            if (known != null) {
+                count("id");
+                return new ExistingEntity(suggested, known);
+            }
+        }
+
+        var resolved = repository.findByName(suggested.getName(), suggested.getLabels());
+        if (resolved.isEmpty()) {
+            count("new");
+            return new NewEntity(suggested);
+        }
+
+        var match = resolved.get().match();
+        count(match.type().name().toLowerCase());
+        if (match.type() != EntityNameIndex.MatchType.EXACT) {
+            logger.debug("Resolved '{}' to entity {} with a {} match, remembering it as an alias",
+                    suggested.getName(), match.entityId(), match.type());
+            repository.addAlias(match.entityId(), Objects.requireNonNull(suggested.getName()));
+        }
+        return new ExistingEntity(suggested, resolved.get().entity());
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("knowledge.entities.resolution", "result", result).increment();
+    }
+}
@@ -0,0 +1,231 @@
+package dev.jettro.knowledge.entity;
+
+import com.embabel.agent.core.DataDictionary;
+import com.embabel.agent.rag.model.NamedEntityData;
+import com.embabel.agent.rag.model.Retrievable;
+import com.embabel.agent.rag.service.NamedEntityDataRepository;
+import com.embabel.common.ai.model.EmbeddingService;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.SimpleSimilaritySearchResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import dev.jettro.knowledge.vector.PackedVectorStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory {@link NamedEntityDataRepository} that keeps the entity embeddings in a {@link PackedVectorStore}
+ * instead of next to each entity. The store is created with the dimensions of the first embedding.
+ */
+public class PackedNamedEntityDataRepository implements NamedEntityDataRepository {
+
+    private final DataDictionary dataDictionary;
+    private final EmbeddingService embeddingService;
+    private final Map<String, Entry> entities = new ConcurrentHashMap<>();
+    private final ThreadLocal<PackedVectorStore.TopK> topKBuffers = new ThreadLocal<>();
+
+    private volatile PackedVectorStore vectors;
+    private volatile String[] idsByHandle = new String[0];
+
+    public PackedNamedEntityDataRepository(DataDictionary dataDictionary, EmbeddingService embeddingService) {
+        this.dataDictionary = dataDictionary;
+        this.embeddingService = embeddingService;
+    }
+
+    @NotNull
+    @Override
+    public DataDictionary getDataDictionary() {
+        return dataDictionary;
+    }
+
+    @NotNull
+    @Override
+    public NamedEntityData save(@NotNull NamedEntityData entity) {
+        put(entity, embeddingService.embed(embeddableText(entity)));
+        return entity;
+    }
+
+    @Nullable
+    @Override
+    public NamedEntityData findById(@NotNull String id) {
+        var entry = entities.get(id);
+        return entry == null ? null : entry.entity();
+    }
+
+    @NotNull
+    @Override
+    public List<NamedEntityData> findByLabel(@NotNull String label) {
+        return entities.values().stream()
+                .map(Entry::entity)
+                .filter(entity -> entity.labels().contains(label))
+                .toList();
+    }
+
+    @Override
+    public synchronized boolean delete(@NotNull String id) {
+        var entry = entities.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        vectors.remove(entry.handle());
+        idsByHandle[entry.handle()] = null;
+        return true;
+    }
+
+    @Override
+    public boolean supportsType(@NotNull String type) {
+        return entities.values().stream().anyMatch(entry -> entry.entity().labels().contains(type));
+    }
+
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> vectorSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                         @NotNull Class<T> clazz) {
+        var store = vectors;
+        if (store == null || request.getTopK() <= 0) {
+            return List.of();
+        }
+        var query = embeddingService.embed(request.getQuery());
+        var topK = topKBuffer(request.getTopK());
+        var ids = idsByHandle;
+        IntPredicate filter = clazz.isAssignableFrom(NamedEntityData.class)
+                ? null
+                : handle -> handle < ids.length && ids[handle] != null && clazz.isInstance(findById(ids[handle]));
+        store.search(query, filter, topK);
+
+        var results = new ArrayList<SimilarityResult<T>>(Math.min(topK.count(), request.getTopK()));
+        for (int i = 0; i < topK.count() && results.size() < request.getTopK(); i++) {
+            if (topK.score(i) < request.getSimilarityThreshold()) {
+                break;
+            }
+            var entity = entityAt(topK.handle(i));
+            if (entity != null) {
+                results.add(new SimpleSimilaritySearchResult<>(clazz.cast(entity), topK.score(i)));
+            }
+        }
+        return results;
+    }
+
+    @NotNull
+    @Override
+    public String getLuceneSyntaxNotes() {
+        return "Lucene query syntax is not supported, the query terms are matched against entity names and descriptions";
+    }
+
+    /**
+     * Scores entities by the fraction of query terms that occur in their name or description.
+     */
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> textSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                       @NotNull Class<T> clazz) {
+        var terms = terms(request.getQuery());
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        var results = new ArrayList<SimilarityResult<T>>();
+        for (Entry entry : entities.values()) {
+            if (!clazz.isInstance(entry.entity())) {
+                continue;
+            }
+            var entityTerms = terms(embeddableText(entry.entity()));
+            long matched = terms.stream().filter(entityTerms::contains).count();
+            double score = (double) matched / terms.size();
+            if (matched > 0 && score >= request.getSimilarityThreshold()) {
+                results.add(new SimpleSimilaritySearchResult<>(clazz.cast(entry.entity()), score));
+            }
+        }
+        results.sort(Comparator.comparingDouble(SimilarityResult<T>::getScore).reversed());
+        return results.size() > request.getTopK() ? List.copyOf(results.subList(0, request.getTopK())) : results;
+    }
+
+    /**
+     * Stores the entity with an embedding that was already computed.
+     */
+    protected synchronized void put(NamedEntityData entity, float[] embedding) {
+        var store = vectorStore(embedding.length);
+        var existing = entities.get(entity.getId());
+        int handle;
+        if (existing != null) {
+            handle = existing.handle();
+            store.set(handle, embedding);
+        } else {
+            handle = store.add(embedding);
+        }
+        entities.put(entity.getId(), new Entry(entity, handle));
+        mapHandle(handle, entity.getId());
+    }
+
+    /**
+     * The normalized embedding of the entity, or {@code null} when the entity is unknown.
+     */
+    protected float[] embeddingOf(String id) {
+        var entry = entities.get(id);
+        if (entry == null) {
+            return null;
+        }
+        var embedding = new float[vectors.dimensions()];
+        vectors.copyTo(entry.handle(), embedding);
+        return embedding;
+    }
+
+    protected int size() {
+        return entities.size();
+    }
+
+    protected List<NamedEntityData> entities() {
+        return entities.values().stream().map(Entry::entity).toList();
+    }
+
+    private PackedVectorStore vectorStore(int dimensions) {
+        if (vectors == null) {
+            vectors = new PackedVectorStore(dimensions);
+        }
+        return vectors;
+    }
+
+    private void mapHandle(int handle, String id) {
+        var ids = idsByHandle;
+        if (handle >= ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(16, handle * 2));
+        }
+        ids[handle] = id;
+        idsByHandle = ids;
+    }
+
+    private NamedEntityData entityAt(int handle) {
+        var ids = idsByHandle;
+        return handle < ids.length && ids[handle] != null ? findById(ids[handle]) : null;
+    }
+
+    private PackedVectorStore.TopK topKBuffer(int k) {
+        var buffer = topKBuffers.get();
+        if (buffer == null || buffer.capacity() < k) {
+            buffer = new PackedVectorStore.TopK(k);
+            topKBuffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    protected static String embeddableText(NamedEntityData entity) {
+        return entity.getDescription() == null || entity.getDescription().isBlank()
+                ? entity.getName()
+                : entity.getName() + ": " + entity.getDescription();
+    }
+
+    private static Set<String> terms(String text) {
+        var terms = new HashSet<String>();
+        for (String term : text.toLowerCase(Locale.ROOT).split("\\W+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private record Entry(NamedEntityData entity, int handle) {
+    }
+}
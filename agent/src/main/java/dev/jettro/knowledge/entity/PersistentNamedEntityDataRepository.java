@@ -0,0 +1,140 @@
+package dev.jettro.knowledge.entity;
+
+import com.embabel.agent.core.DataDictionary;
+import com.embabel.agent.rag.model.NamedEntityData;
+import com.embabel.agent.rag.model.SimpleNamedEntityData;
+import com.embabel.common.ai.model.EmbeddingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jettro.knowledge.persistence.TypedValue;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link PackedNamedEntityDataRepository} that survives restarts. Every change is appended to an {@link EntityLog},
+ * together with the embedding, so loading the store at startup does not call the embedding model. The
+ * {@link EntityNameIndex} over the names and aliases is rebuilt while loading.
+ * <p>
+ * Entities are read back as {@link SimpleNamedEntityData}. The log is compacted at startup when less than half of
+ * its records are still live. Closing the repository writes a snapshot of the entities, so the next startup does
+ * not have to parse the log.
+ * </p>
+ */
+public class PersistentNamedEntityDataRepository extends PackedNamedEntityDataRepository implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(PersistentNamedEntityDataRepository.class);
+
+    private final EmbeddingService embeddingService;
+    private final EntityLog log;
+    private final EntityNameIndex nameIndex;
+    private final List<Consumer<String>> deletionListeners = new CopyOnWriteArrayList<>();
+
+    public PersistentNamedEntityDataRepository(DataDictionary dataDictionary,
+                                               EmbeddingService embeddingService,
+                                               EntityStoreProperties properties,
+                                               ObjectMapper objectMapper) {
+        super(dataDictionary, embeddingService);
+        this.embeddingService = embeddingService;
+        this.log = new EntityLog(properties.path(), properties.snapshotPath(), objectMapper);
+        this.nameIndex = new EntityNameIndex(properties.minPrefixLength(), properties.fuzzyThreshold());
+        load();
+    }
+
+    @NotNull
+    @Override
+    public NamedEntityData save(@NotNull NamedEntityData entity) {
+        var embedding = embeddingService.embed(embeddableText(entity));
+        synchronized (this) {
+            put(entity, embedding);
+            nameIndex.put(entity.getId(), entity.getName(), entity.labels());
+            log.append(toRecord(entity, embedding));
+        }
+        return entity;
+    }
+
+    @Override
+    public synchronized boolean delete(@NotNull String id) {
+        if (!super.delete(id)) {
+            return false;
+        }
+        nameIndex.remove(id);
+        log.append(EntityLog.Record.deleted(id));
+        deletionListeners.forEach(listener -> listener.accept(id));
+        return true;
+    }
+
+    /**
+     * Registers a listener that is called with the ID of every deleted entity, including entities that were merged
+     * into another one.
+     */
+    public void addDeletionListener(Consumer<String> listener) {
+        deletionListeners.add(listener);
+    }
+
+    /**
+     * Finds the entity a mention refers to by its name or one of its aliases, without calling a model.
+     */
+    public Optional<ResolvedName> findByName(String mention, Collection<String> labels) {
+        return nameIndex.lookup(mention, labels)
+                .flatMap(match -> Optional.ofNullable(findById(match.entityId()))
+                        .map(entity -> new ResolvedName(entity, match)));
+    }
+
+    /**
+     * Remembers another name for an entity, so later mentions with that name are exact matches.
+     */
+    public synchronized void addAlias(String id, String alias) {
+        var entity = findById(id);
+        if (entity != null && nameIndex.addAlias(id, alias)) {
+            log.append(toRecord(entity, embeddingOf(id)));
+        }
+    }
+
+    /**
+     * @param entity The entity the mention refers to.
+     * @param match  How the mention matched the name index.
+     */
+    public record ResolvedName(NamedEntityData entity, EntityNameIndex.Match match) {
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.snapshot(entities().stream().map(entity -> toRecord(entity, embeddingOf(entity.getId()))).toList());
+        log.close();
+    }
+
+    private void load() {
+        var records = log.replay();
+        for (EntityLog.Record record : records.values()) {
+            var entity = new SimpleNamedEntityData(
+                    record.id(), record.name(), record.description(), record.labels(),
+                    TypedValue.unwrap(record.properties()));
+            put(entity, record.embedding());
+            nameIndex.put(record.id(), record.name(), record.labels());
+            record.aliases().forEach(alias -> nameIndex.addAlias(record.id(), alias));
+        }
+        logger.info("Loaded {} entities from the entity log", records.size());
+        if (log.lines() > 2 * records.size()) {
+            log.compact(records.values());
+        }
+    }
+
+    private EntityLog.Record toRecord(NamedEntityData entity, float[] embedding) {
+        var aliases = new HashSet<>(nameIndex.namesOf(entity.getId()));
+        aliases.remove(EntityNameIndex.normalize(entity.getName()));
+        return new EntityLog.Record(
+                entity.getId(),
+                false,
+                entity.getName(),
+                entity.getDescription(),
+                Set.copyOf(entity.labels()),
+                entity.getProperties() == null ? Map.of() : TypedValue.wrap(entity.getProperties()),
+                aliases,
+                embedding);
+    }
+}
@@ -0,0 +1,19 @@
+package dev.jettro.knowledge.incremental;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Configuration for the persistent history of processed conversation windows.
+ *
+ * @param path         Append-only log of processed windows.
+ * @param snapshotPath Binary snapshot of the live windows, written at shutdown and read at startup instead of the
+ *                     log when the log did not change since.
+ */
+@ConfigurationProperties(prefix = "knowledge.chunk-history")
+public record ChunkHistoryProperties(
+        @DefaultValue("./.chunk-history/history.jsonl") Path path,
+        @DefaultValue("./.chunk-history/history.snapshot") Path snapshotPath) {
+}
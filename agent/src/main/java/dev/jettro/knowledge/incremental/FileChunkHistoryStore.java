@@ -0,0 +1,176 @@
+package dev.jettro.knowledge.incremental;
+
+import com.embabel.dice.incremental.ChunkHistoryStore;
+import com.embabel.dice.incremental.ProcessedChunkRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.jettro.knowledge.persistence.AppendOnlyLog;
+import dev.jettro.knowledge.persistence.LogSnapshot;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * {@link ChunkHistoryStore} backed by an {@link AppendOnlyLog}, so the incremental analyzer remembers which
+ * conversation windows it already processed after a restart and never sends them to the LLM again.
+ * <p>
+ * Every processed window is appended as a JSON line, clearing a source appends a marker. The log is replayed into
+ * memory at startup, which keeps {@link #isProcessed(String)} a hash lookup. When the records of cleared sources make
+ * up more than half of the log, it is rewritten with only the live records.
+ * </p>
+ * <p>
+ * Closing the store writes the live records to a binary {@link LogSnapshot}, which is read instead of the log at the
+ * next startup when the log did not change in between.
+ * </p>
+ */
+public class FileChunkHistoryStore implements ChunkHistoryStore, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FileChunkHistoryStore.class);
+    private static final String SNAPSHOT_KIND = "chunk history";
+
+    /**
+     * A line in the log, either a processed window or the marker of a cleared source.
+     */
+    record Entry(String sourceId,
+                 boolean cleared,
+                 String contentHash,
+                 int startIndex,
+                 int endIndex,
+                 long processedAt) {
+
+        static Entry of(ProcessedChunkRecord record) {
+            return new Entry(record.getSourceId(), false, record.getContentHash(), record.getStartIndex(),
+                    record.getEndIndex(), record.getProcessedAt().toEpochMilli());
+        }
+
+        ProcessedChunkRecord toRecord() {
+            return new ProcessedChunkRecord(sourceId, contentHash, startIndex, endIndex,
+                    Instant.ofEpochMilli(processedAt));
+        }
+    }
+
+    /**
+     * The live entries in a snapshot, with the number of lines of the log it was taken from.
+     */
+    private record Snapshot(int lines, List<Entry> entries) {
+    }
+
+    private final AppendOnlyLog<Entry> log;
+    private final Path snapshotPath;
+    // Number of live windows per content hash, the same window can be processed for more than one source
+    private final Map<String, Integer> processedHashes = new HashMap<>();
+    private final Map<String, List<Entry>> entriesBySource = new LinkedHashMap<>();
+    private int liveEntries;
+
+    public FileChunkHistoryStore(ChunkHistoryProperties properties, ObjectMapper objectMapper) {
+        this.log = new AppendOnlyLog<>(properties.path(), Entry.class, "chunk history", objectMapper);
+        this.snapshotPath = properties.snapshotPath();
+        load();
+    }
+
+    @Override
+    public synchronized boolean isProcessed(@NotNull String contentHash) {
+        return processedHashes.containsKey(contentHash);
+    }
+
+    @Override
+    public synchronized void recordProcessed(@NotNull ProcessedChunkRecord record) {
+        var entry = Entry.of(record);
+        log.append(entry);
+        apply(entry);
+    }
+
+    @Nullable
+    @Override
+    public synchronized ProcessedChunkRecord getLastProcessed(@NotNull String sourceId) {
+        var entries = entriesBySource.get(sourceId);
+        return entries == null || entries.isEmpty() ? null : entries.getLast().toRecord();
+    }
+
+    @Override
+    public synchronized void clear(@NotNull String sourceId) {
+        if (!entriesBySource.containsKey(sourceId)) {
+            return;
+        }
+        var entry = new Entry(sourceId, true, null, 0, 0, System.currentTimeMillis());
+        log.append(entry);
+        apply(entry);
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+        LogSnapshot.write(snapshotPath, log.path(), SNAPSHOT_KIND, out -> {
+            out.writeInt(log.lines());
+            out.writeInt(liveEntries);
+            for (List<Entry> entries : entriesBySource.values()) {
+                for (Entry entry : entries) {
+                    LogSnapshot.writeString(out, entry.sourceId());
+                    LogSnapshot.writeString(out, entry.contentHash());
+                    out.writeInt(entry.startIndex());
+                    out.writeInt(entry.endIndex());
+                    out.writeLong(entry.processedAt());
+                }
+            }
+        });
+    }
+
+    private void apply(Entry entry) {
+        if (entry.cleared()) {
+            var removed = entriesBySource.remove(entry.sourceId());
+            if (removed != null) {
+                removed.forEach(processed -> processedHashes.computeIfPresent(
+                        processed.contentHash(), (hash, count) -> count == 1 ? null : count - 1));
+                liveEntries -= removed.size();
+            }
+        } else {
+            entriesBySource.computeIfAbsent(entry.sourceId(), id -> new ArrayList<>()).add(entry);
+            processedHashes.merge(entry.contentHash(), 1, Integer::sum);
+            liveEntries++;
+        }
+    }
+
+    private void load() {
+        var snapshot = LogSnapshot.read(snapshotPath, log.path(), SNAPSHOT_KIND, FileChunkHistoryStore::readSnapshot);
+        if (snapshot.isPresent()) {
+            snapshot.get().entries().forEach(this::apply);
+            log.restoredLines(snapshot.get().lines());
+            logger.info("Loaded chunk history with {} processed windows of {} sources",
+                    liveEntries, entriesBySource.size());
+            return;
+        }
+        if (!log.exists()) {
+            logger.info("No chunk history found at {}, starting with an empty history", log.path());
+            return;
+        }
+        log.replay(this::apply);
+        logger.info("Loaded chunk history with {} processed windows of {} sources",
+                liveEntries, entriesBySource.size());
+        compactIfNeeded();
+    }
+
+    private static Snapshot readSnapshot(DataInputStream in) throws IOException {
+        int loggedLines = in.readInt();
+        int count = in.readInt();
+        var entries = new ArrayList<Entry>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry(LogSnapshot.readString(in), false, LogSnapshot.readString(in),
+                    in.readInt(), in.readInt(), in.readLong()));
+        }
+        return new Snapshot(loggedLines, entries);
+    }
+
+    private void compactIfNeeded() {
+        if (log.lines() <= 2 * liveEntries) {
+            return;
+        }
+        log.rewrite(entriesBySource.values().stream().flatMap(List::stream).toList());
+    }
+}
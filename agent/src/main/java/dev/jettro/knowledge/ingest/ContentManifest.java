@@ -0,0 +1,118 @@
+package dev.jettro.knowledge.ingest;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent record of every ingested file: the content hash, modification time and size. The manifest is what lets
+ * ingestion skip files that did not change since the last run. The chunks of a file are found by its URI, the root
+ * URI of the document in the index, so the manifest does not keep their IDs.
+ * <p>
+ * The manifest is kept in memory and written to a JSON file with an atomic move, so a crash during ingestion leaves
+ * the last saved version intact. A manifest that cannot be read is moved aside and rebuilt: nothing is known about the
+ * files that are already in the index, so the {@link ManifestRefreshPolicy} treats all of them as changed.
+ * </p>
+ */
+@Component
+public class ContentManifest {
+    private static final Logger logger = LoggerFactory.getLogger(ContentManifest.class);
+
+    private final Path manifestPath;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private boolean predatedByIndex;
+
+    public ContentManifest(IngestionProperties properties, ObjectMapper objectMapper) {
+        this.manifestPath = properties.manifestPath();
+        this.objectMapper = objectMapper;
+        load();
+    }
+
+    /**
+     * State of a single ingested file.
+     *
+     * @param uri          URI of the file, also the root URI of the document in the index.
+     * @param contentHash  SHA-256 of the file content.
+     * @param lastModified Modification time of the file in milliseconds since the epoch.
+     * @param size         Size of the file in bytes.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Entry(String uri, String contentHash, long lastModified, long size) {
+    }
+
+    public Optional<Entry> get(String uri) {
+        return Optional.ofNullable(entries.get(uri));
+    }
+
+    public void put(Entry entry) {
+        entries.put(entry.uri(), entry);
+    }
+
+    public void remove(String uri) {
+        entries.remove(uri);
+    }
+
+    public Set<String> uris() {
+        return Set.copyOf(entries.keySet());
+    }
+
+    /**
+     * Whether there was no manifest at all when the application started, not even one that was moved aside because
+     * it could not be read. Files in the index were then written before manifests existed and can be adopted.
+     */
+    public boolean predatedByIndex() {
+        return predatedByIndex;
+    }
+
+    public synchronized void save() {
+        try {
+            var parent = manifestPath.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            var tempFile = Files.createTempFile(parent, "manifest", ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), new ArrayList<>(entries.values()));
+            Files.move(tempFile, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write ingestion manifest " + manifestPath, e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(manifestPath)) {
+            predatedByIndex = !Files.exists(corruptPath());
+            logger.info("No ingestion manifest found at {}, starting with an empty one", manifestPath);
+            return;
+        }
+        try {
+            var loaded = objectMapper.readValue(manifestPath.toFile(), Entry[].class);
+            for (Entry entry : loaded) {
+                entries.put(entry.uri(), entry);
+            }
+            logger.info("Loaded ingestion manifest with {} entries", entries.size());
+        } catch (IOException e) {
+            entries.clear();
+            var corruptPath = corruptPath();
+            logger.error("Could not read ingestion manifest {}, moving it to {} and rebuilding it from the index",
+                    manifestPath, corruptPath, e);
+            try {
+                Files.move(manifestPath, corruptPath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveError) {
+                logger.warn("Could not move the unreadable manifest {} aside", manifestPath, moveError);
+            }
+        }
+    }
+
+    private Path corruptPath() {
+        return manifestPath.resolveSibling(manifestPath.getFileName() + ".corrupt");
+    }
+}
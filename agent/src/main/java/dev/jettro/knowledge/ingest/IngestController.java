@@ -1,49 +1,41 @@
 package dev.jettro.knowledge.ingest;
 
-import com.embabel.agent.rag.ingestion.TikaHierarchicalContentReader;
-import com.embabel.agent.rag.ingestion.policy.NeverRefreshExistingDocumentContentPolicy;
-import com.embabel.agent.rag.lucene.LuceneSearchOperations;
+import dev.jettro.knowledge.ingest.model.IngestionJobResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-
 @RestController
 public class IngestController {
     private static final Logger logger = LoggerFactory.getLogger(IngestController.class);
 
-    private final LuceneSearchOperations searchOperations;
+    private final IngestionService ingestionService;
 
-    public IngestController(LuceneSearchOperations searchOperations) {
-        this.searchOperations = searchOperations;
+    public IngestController(IngestionService ingestionService) {
+        this.ingestionService = ingestionService;
     }
 
+    /**
+     * Starts ingesting the data directory in the background. Use the returned job ID to follow the progress.
+     */
     @PostMapping("/ingest")
-    public String ingestData() {
-        var dataPath = Path.of("./data");
-        int count = 0;
-        try (var stream = Files.list(dataPath)) {
-            var files = stream.filter(Files::isRegularFile).toList();
-            for (Path file : files) {
-                var fileUri = file.toAbsolutePath().toUri().toString();
-                var ingested = NeverRefreshExistingDocumentContentPolicy.INSTANCE.ingestUriIfNeeded(
-                        searchOperations,
-                        new TikaHierarchicalContentReader(),
-                        fileUri
-                );
-                if (ingested != null) {
-                    count++;
-                }
-            }
-        } catch (java.io.IOException e) {
-            logger.error("Error reading data directory", e);
-            return "Error reading data directory: " + e.getMessage();
-        }
-
-        return "Successfully ingested " + count + " files";
+    public ResponseEntity<IngestionJobResponse> ingestData() {
+        var job = ingestionService.startJob();
+        logger.info("Ingestion job {} is {}", job.getId(), job.getState());
+
+        return ResponseEntity.accepted().body(IngestionJobResponse.from(job));
+    }
+
+    @GetMapping("/ingest/{jobId}")
+    public ResponseEntity<IngestionJobResponse> ingestStatus(@PathVariable String jobId) {
+        return ingestionService.findJob(jobId)
+                .map(IngestionJobResponse::from)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
 }
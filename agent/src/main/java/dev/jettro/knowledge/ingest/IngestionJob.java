@@ -0,0 +1,141 @@
+package dev.jettro.knowledge.ingest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a single ingestion run. Counters are updated by the ingestion threads and can be read at any time.
+ */
+public class IngestionJob {
+    private static final int MAX_ERRORS = 50;
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id;
+    private final Instant createdAt = Instant.now();
+    private final AtomicInteger parsedFiles = new AtomicInteger();
+    private final AtomicInteger ingestedFiles = new AtomicInteger();
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+    private final AtomicInteger failedFiles = new AtomicInteger();
+    private final AtomicInteger deletedFiles = new AtomicInteger();
+    private final List<String> errors = new ArrayList<>();
+
+    private volatile State state = State.QUEUED;
+    private volatile int totalFiles;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+
+    public IngestionJob(String id) {
+        this.id = id;
+    }
+
+    void start(int totalFiles) {
+        this.totalFiles = totalFiles;
+        this.startedAt = Instant.now();
+        this.state = State.RUNNING;
+    }
+
+    void parsed() {
+        parsedFiles.incrementAndGet();
+    }
+
+    void ingested() {
+        ingestedFiles.incrementAndGet();
+    }
+
+    void skipped() {
+        skippedFiles.incrementAndGet();
+    }
+
+    void failed(String uri, Exception e) {
+        failedFiles.incrementAndGet();
+        addError(uri + ": " + e.getMessage());
+    }
+
+    void deleted() {
+        deletedFiles.incrementAndGet();
+    }
+
+    void complete() {
+        finish(State.COMPLETED);
+    }
+
+    void fail(String message) {
+        addError(message);
+        finish(State.FAILED);
+    }
+
+    private void finish(State finalState) {
+        this.finishedAt = Instant.now();
+        this.state = finalState;
+    }
+
+    private void addError(String error) {
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(error);
+            }
+        }
+    }
+
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public int getParsedFiles() {
+        return parsedFiles.get();
+    }
+
+    public int getIngestedFiles() {
+        return ingestedFiles.get();
+    }
+
+    public int getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    public int getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    public int getDeletedFiles() {
+        return deletedFiles.get();
+    }
+
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return List.copyOf(errors);
+        }
+    }
+}
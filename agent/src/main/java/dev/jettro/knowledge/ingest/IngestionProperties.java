@@ -0,0 +1,28 @@
+package dev.jettro.knowledge.ingest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration for the ingestion pipeline.
+ *
+ * @param dataPath       Directory that is scanned for documents to ingest.
+ * @param manifestPath   File that keeps track of the ingested files and their content hashes.
+ * @param workerThreads  Number of threads parsing documents in parallel.
+ * @param queueCapacity  Maximum number of files that are parsed or waiting to be written at any time.
+ * @param writeBatchSize Number of parsed documents handed to the index writer in one go.
+ * @param commitInterval Interval at which a running job commits its writes in the background, so searches see
+ *                       them before the job ends.
+ */
+@ConfigurationProperties(prefix = "knowledge.ingestion")
+public record IngestionProperties(
+        @DefaultValue("./data") Path dataPath,
+        @DefaultValue("./.ingest-manifest.json") Path manifestPath,
+        @DefaultValue("4") int workerThreads,
+        @DefaultValue("32") int queueCapacity,
+        @DefaultValue("8") int writeBatchSize,
+        @DefaultValue("30s") Duration commitInterval) {
+}
@@ -0,0 +1,302 @@
+package dev.jettro.knowledge.ingest;
+
+import com.embabel.agent.rag.ingestion.TikaHierarchicalContentReader;
+import com.embabel.agent.rag.model.NavigableDocument;
+import dev.jettro.knowledge.lucene.SourcesIndex;
+import dev.jettro.knowledge.lucene.SourcesIndexSearcher;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs ingestion of the data directory as a background job.
+ * <p>
+ * Files are parsed with Tika on a bounded pool of worker threads. Parsed documents are handed to the job thread,
+ * that writes them to the index in batches. The documents of a batch are written to the shards of the index in
+ * parallel, with a single writer per shard. Embedding requests of the shards that write at the same time are combined
+ * into batched calls by the embedding service. The number of files in flight is capped by the queue capacity, so a slow index writer throttles the parsers instead
+ * of filling up the heap.
+ * </p>
+ * <p>
+ * Files are compared with the {@link ContentManifest} first, only new and changed files are parsed and embedded.
+ * The chunks of changed files are replaced, and files that disappeared from the data directory are removed from the
+ * index.
+ * </p>
+ * <p>
+ * Writes are committed in the background at the commit interval while a job runs, and the
+ * {@link SourcesIndexSearcher} is refreshed after each commit, so searches see new documents before the job ends
+ * without a commit per document.
+ * </p>
+ * <p>
+ * Only one job runs at a time, starting a new job while one is running returns the running job. A
+ * {@link SourcesIndexChangedEvent} is published after every commit of written or removed documents, also when the job
+ * failed halfway, so caches of search results never outlive the index they were built on.
+ * </p>
+ */
+@Service
+public class IngestionService {
+    private static final Logger logger = LoggerFactory.getLogger(IngestionService.class);
+    private static final int MAX_RETAINED_JOBS = 20;
+
+    private final SourcesIndex sourcesIndex;
+    private final IngestionProperties properties;
+    private final ContentManifest manifest;
+    private final ManifestRefreshPolicy refreshPolicy;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SourcesIndexSearcher indexSearcher;
+    private final TikaHierarchicalContentReader contentReader = new TikaHierarchicalContentReader();
+
+    private final ExecutorService jobExecutor;
+    private final ExecutorService parserPool;
+    private final ScheduledExecutorService committer;
+    private final AtomicBoolean uncommittedWrites = new AtomicBoolean();
+
+    private final Map<String, IngestionJob> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IngestionJob> eldest) {
+            return size() > MAX_RETAINED_JOBS && eldest.getValue().isFinished();
+        }
+    };
+    private IngestionJob activeJob;
+
+    public IngestionService(SourcesIndex sourcesIndex,
+                            IngestionProperties properties,
+                            ContentManifest manifest,
+                            ManifestRefreshPolicy refreshPolicy,
+                            ApplicationEventPublisher eventPublisher,
+                            SourcesIndexSearcher indexSearcher) {
+        this.sourcesIndex = sourcesIndex;
+        this.properties = properties;
+        this.manifest = manifest;
+        this.refreshPolicy = refreshPolicy;
+        this.eventPublisher = eventPublisher;
+        this.indexSearcher = indexSearcher;
+        this.jobExecutor = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("ingest-job").daemon().factory());
+        this.parserPool = new ThreadPoolExecutor(
+                properties.workerThreads(), properties.workerThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.queueCapacity()),
+                Thread.ofPlatform().name("ingest-parser-", 0).daemon().factory());
+        this.committer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("ingest-commit").daemon().factory());
+        long interval = properties.commitInterval().toMillis();
+        committer.scheduleWithFixedDelay(this::commitIfNeeded, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a new ingestion job, or returns the job that is currently running.
+     */
+    public synchronized IngestionJob startJob() {
+        if (activeJob != null && !activeJob.isFinished()) {
+            logger.info("Ingestion job {} is still running, not starting a new one", activeJob.getId());
+            return activeJob;
+        }
+
+        var job = new IngestionJob(UUID.randomUUID().toString());
+        jobs.put(job.getId(), job);
+        activeJob = job;
+
+        jobExecutor.submit(() -> run(job));
+        return job;
+    }
+
+    public synchronized Optional<IngestionJob> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(IngestionJob job) {
+        List<Path> files;
+        try (var stream = Files.list(properties.dataPath())) {
+            files = stream.filter(Files::isRegularFile).toList();
+        } catch (IOException e) {
+            logger.error("Error reading data directory", e);
+            job.fail("Error reading data directory: " + e.getMessage());
+            return;
+        }
+
+        logger.info("Ingestion job {} started for {} files", job.getId(), files.size());
+        job.start(files.size());
+
+        try {
+            parseAndWrite(job, files);
+            removeDeletedFiles(job, files);
+            manifest.save();
+            job.complete();
+            logger.info("Ingestion job {} finished: {} ingested, {} unchanged, {} removed, {} failed",
+                    job.getId(), job.getIngestedFiles(), job.getSkippedFiles(), job.getDeletedFiles(),
+                    job.getFailedFiles());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Ingestion interrupted");
+        } catch (RuntimeException e) {
+            logger.error("Ingestion job {} failed", job.getId(), e);
+            job.fail(e.getMessage());
+        } finally {
+            commitIfNeeded();
+        }
+    }
+
+    private void parseAndWrite(IngestionJob job, List<Path> files) throws InterruptedException {
+        var completionService = new ExecutorCompletionService<ParsedFile>(parserPool);
+        var pending = new ArrayDeque<>(files);
+        var batch = new ArrayList<ParsedFile>(properties.writeBatchSize());
+
+        int inFlight = 0;
+        while (!pending.isEmpty() && inFlight < properties.queueCapacity()) {
+            submitParse(completionService, pending.poll());
+            inFlight++;
+        }
+
+        while (inFlight > 0) {
+            var parsedFile = takeResult(completionService);
+            inFlight--;
+            if (!pending.isEmpty()) {
+                submitParse(completionService, pending.poll());
+                inFlight++;
+            }
+
+            if (parsedFile.error() != null) {
+                logger.warn("Failed to parse {}", parsedFile.uri(), parsedFile.error());
+                job.failed(parsedFile.uri(), parsedFile.error());
+            } else if (!parsedFile.decision().needsIngestion()) {
+                recordInManifest(parsedFile.decision());
+                job.skipped();
+            } else {
+                job.parsed();
+                batch.add(parsedFile);
+                if (batch.size() >= properties.writeBatchSize()) {
+                    writeBatch(job, batch);
+                }
+            }
+        }
+        writeBatch(job, batch);
+    }
+
+    private void submitParse(CompletionService<ParsedFile> completionService, Path file) {
+        completionService.submit(() -> parse(file));
+    }
+
+    private ParsedFile parse(Path file) {
+        var fileUri = file.toAbsolutePath().toUri().toString();
+        try {
+            var decision = refreshPolicy.evaluate(file);
+            if (!decision.needsIngestion()) {
+                return new ParsedFile(fileUri, decision, null, null);
+            }
+            return new ParsedFile(fileUri, decision, contentReader.parseUrl(fileUri), null);
+        } catch (Exception e) {
+            return new ParsedFile(fileUri, null, null, e);
+        }
+    }
+
+    private ParsedFile takeResult(CompletionService<ParsedFile> completionService) throws InterruptedException {
+        try {
+            return completionService.take().get();
+        } catch (ExecutionException e) {
+            // parse() catches its own exceptions, this only happens when the task itself could not run
+            throw new IllegalStateException("Parser task failed", e.getCause());
+        }
+    }
+
+    private void writeBatch(IngestionJob job, List<ParsedFile> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        logger.debug("Writing batch of {} documents to the index", batch.size());
+        sourcesIndex.operations().forEachByShard(batch, ParsedFile::uri, parsedFile -> write(job, parsedFile));
+        batch.clear();
+        manifest.save();
+    }
+
+    private void write(IngestionJob job, ParsedFile parsedFile) {
+        try {
+            if (parsedFile.decision().status() == ManifestRefreshPolicy.Status.CHANGED) {
+                logger.info("Content of {} changed, replacing its chunks", parsedFile.uri());
+                sourcesIndex.operations().deleteRootAndDescendants(parsedFile.uri());
+            }
+            sourcesIndex.operations().writeAndChunkDocument(parsedFile.document());
+            uncommittedWrites.set(true);
+            recordInManifest(parsedFile.decision());
+            job.ingested();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to write {} to the index", parsedFile.uri(), e);
+            job.failed(parsedFile.uri(), e);
+        }
+    }
+
+    private void removeDeletedFiles(IngestionJob job, List<Path> files) {
+        var dataUri = properties.dataPath().toAbsolutePath().toUri().toString();
+        var currentUris = new HashSet<String>();
+        for (Path file : files) {
+            currentUris.add(file.toAbsolutePath().toUri().toString());
+        }
+
+        for (String uri : manifest.uris()) {
+            if (uri.startsWith(dataUri) && !currentUris.contains(uri)) {
+                logger.info("File {} was removed, deleting its chunks", uri);
+                sourcesIndex.operations().deleteRootAndDescendants(uri);
+                uncommittedWrites.set(true);
+                manifest.remove(uri);
+                job.deleted();
+            }
+        }
+    }
+
+    /**
+     * Commits the index when documents were written or deleted since the last commit, lets the searcher pick up
+     * the changes and tells the caches that the sources changed. Called by the committer while a job runs and by the
+     * job when it ends.
+     */
+    private void commitIfNeeded() {
+        if (!uncommittedWrites.getAndSet(false)) {
+            return;
+        }
+        try {
+            sourcesIndex.operations().commit();
+            indexSearcher.maybeRefresh();
+        } catch (RuntimeException e) {
+            uncommittedWrites.set(true);
+            logger.warn("Could not commit the sources index, retrying at the next interval", e);
+            return;
+        }
+        var job = activeJob();
+        eventPublisher.publishEvent(job == null
+                ? new SourcesIndexChangedEvent(this, null, 0, 0)
+                : new SourcesIndexChangedEvent(this, job.getId(), job.getIngestedFiles(), job.getDeletedFiles()));
+    }
+
+    private synchronized IngestionJob activeJob() {
+        return activeJob;
+    }
+
+    private void recordInManifest(ManifestRefreshPolicy.Decision decision) {
+        manifest.put(new ContentManifest.Entry(
+                decision.uri(),
+                decision.contentHash(),
+                decision.lastModified(),
+                decision.size()));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdownNow();
+        parserPool.shutdownNow();
+        committer.shutdownNow();
+    }
+
+    private record ParsedFile(String uri,
+                              ManifestRefreshPolicy.Decision decision,
+                              NavigableDocument document,
+                              Exception error) {
+    }
+}
@@ -0,0 +1,91 @@
+package dev.jettro.knowledge.ingest;
+
+import dev.jettro.knowledge.lucene.SourcesIndex;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Decides whether a file has to be (re)ingested by comparing it with the {@link ContentManifest}.
+ * <p>
+ * When size and modification time match the manifest the file is not read at all. Otherwise the content is hashed,
+ * only a different hash marks the file as changed. Files that are in the index but not in the manifest are adopted as
+ * unchanged only when the index was created before the manifest existed. In any other case, like a manifest that
+ * could not be read or a run that stopped before saving it, their indexed content is unknown and they are changed.
+ * </p>
+ */
+@Component
+public class ManifestRefreshPolicy {
+
+    public enum Status {
+        NEW,
+        CHANGED,
+        UNCHANGED
+    }
+
+    /**
+     * Outcome of checking a single file against the manifest.
+     */
+    public record Decision(String uri, Status status, String contentHash, long lastModified, long size) {
+
+        public boolean needsIngestion() {
+            return status != Status.UNCHANGED;
+        }
+    }
+
+    private final ContentManifest manifest;
+    private final SourcesIndex sourcesIndex;
+
+    public ManifestRefreshPolicy(ContentManifest manifest, SourcesIndex sourcesIndex) {
+        this.manifest = manifest;
+        this.sourcesIndex = sourcesIndex;
+    }
+
+    public Decision evaluate(Path file) throws IOException {
+        var uri = file.toAbsolutePath().toUri().toString();
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        var lastModified = attributes.lastModifiedTime().toMillis();
+        var size = attributes.size();
+
+        var known = manifest.get(uri);
+        if (known.isPresent() && known.get().lastModified() == lastModified && known.get().size() == size) {
+            return new Decision(uri, Status.UNCHANGED, known.get().contentHash(), lastModified, size);
+        }
+
+        var contentHash = hash(file);
+        if (known.isPresent()) {
+            var status = known.get().contentHash().equals(contentHash) ? Status.UNCHANGED : Status.CHANGED;
+            return new Decision(uri, status, contentHash, lastModified, size);
+        }
+
+        var status = Status.NEW;
+        if (sourcesIndex.operations().existsRootWithUri(uri)) {
+            status = manifest.predatedByIndex() ? Status.UNCHANGED : Status.CHANGED;
+        }
+        return new Decision(uri, status, contentHash, lastModified, size);
+    }
+
+    private static String hash(Path file) throws IOException {
+        var digest = sha256();
+        try (var in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
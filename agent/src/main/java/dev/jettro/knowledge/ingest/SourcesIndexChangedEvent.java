@@ -0,0 +1,22 @@
+package dev.jettro.knowledge.ingest;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event published after documents written or removed by an ingestion job were committed to the sources index, while
+ * the job runs and when it ends. Anything derived from search results over the sources should be discarded. The file
+ * counts are those of the job so far.
+ */
+public class SourcesIndexChangedEvent extends ApplicationEvent {
+
+    public final String jobId;
+    public final int ingestedFiles;
+    public final int deletedFiles;
+
+    public SourcesIndexChangedEvent(Object source, String jobId, int ingestedFiles, int deletedFiles) {
+        super(source);
+        this.jobId = jobId;
+        this.ingestedFiles = ingestedFiles;
+        this.deletedFiles = deletedFiles;
+    }
+}
@@ -0,0 +1,35 @@
+package dev.jettro.knowledge.ingest.model;
+
+import dev.jettro.knowledge.ingest.IngestionJob;
+
+import java.time.Instant;
+import java.util.List;
+
+public record IngestionJobResponse(
+        String jobId,
+        IngestionJob.State state,
+        int totalFiles,
+        int parsedFiles,
+        int ingestedFiles,
+        int skippedFiles,
+        int failedFiles,
+        int deletedFiles,
+        Instant startedAt,
+        Instant finishedAt,
+        List<String> errors) {
+
+    public static IngestionJobResponse from(IngestionJob job) {
+        return new IngestionJobResponse(
+                job.getId(),
+                job.getState(),
+                job.getTotalFiles(),
+                job.getParsedFiles(),
+                job.getIngestedFiles(),
+                job.getSkippedFiles(),
+                job.getFailedFiles(),
+                job.getDeletedFiles(),
+                job.getStartedAt(),
+                job.getFinishedAt(),
+                job.getErrors());
+    }
+}
@@ -0,0 +1,67 @@
+package dev.jettro.knowledge.lucene;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.lucene102.Lucene102HnswBinaryQuantizedVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswScalarQuantizedVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+import org.apache.lucene.codecs.perfield.PerFieldKnnVectorsFormat;
+
+/**
+ * Codecs that only change how vector fields are written.
+ * <p>
+ * The codecs keep the name of the default codec and only swap the per-field vector format. The name of that format is
+ * recorded in the index, so readers opened with the default codec can still read the vectors.
+ * </p>
+ */
+public final class KnnVectorCodecs {
+
+    private KnnVectorCodecs() {
+    }
+
+    /**
+     * Default codec with an HNSW graph built with the given parameters.
+     *
+     * @param maxConn   Maximum number of neighbours per node, higher values improve recall at the cost of memory.
+     * @param beamWidth Number of candidates considered while inserting, higher values build a better graph slower.
+     */
+    public static Codec hnsw(int maxConn, int beamWidth) {
+        return withVectorsFormat(new Lucene99HnswVectorsFormat(maxConn, beamWidth));
+    }
+
+    /**
+     * Default codec with an HNSW graph over scalar quantized vectors. The full precision vectors are kept next to the
+     * quantized ones, the graph is searched with the quantized vectors only.
+     *
+     * @param bits 7 for int8 quantization, 4 for int4 quantization.
+     */
+    public static Codec scalarQuantizedHnsw(int maxConn, int beamWidth, int bits) {
+        return withVectorsFormat(new Lucene99HnswScalarQuantizedVectorsFormat(
+                maxConn, beamWidth, 1, bits, bits == 4, null, null));
+    }
+
+    /**
+     * Default codec with an HNSW graph over binary quantized vectors, one bit per dimension. The full precision
+     * vectors are kept next to the quantized ones.
+     */
+    public static Codec binaryQuantizedHnsw(int maxConn, int beamWidth) {
+        return withVectorsFormat(new Lucene102HnswBinaryQuantizedVectorsFormat(maxConn, beamWidth));
+    }
+
+    public static Codec withVectorsFormat(KnnVectorsFormat vectorsFormat) {
+        var defaultCodec = Codec.getDefault();
+        var perFieldFormat = new PerFieldKnnVectorsFormat() {
+            @Override
+            public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                return vectorsFormat;
+            }
+        };
+        return new FilterCodec(defaultCodec.getName(), defaultCodec) {
+            @Override
+            public KnnVectorsFormat knnVectorsFormat() {
+                return perFieldFormat;
+            }
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package dev.jettro.knowledge.lucene;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Guards the number of shards of the sources index. Documents are assigned to shards by hash, so an index written
+ * with another number of shards would be searched, but documents would be replaced and deleted in the wrong shard.
+ * <p>
+ * The number of shards is kept in a {@code shards} file in the index directory, an index without that file is a
+ * single index. Changing the number of shards requires ingesting the sources again into an empty index.
+ * </p>
+ */
+public final class ShardLayout {
+    static final String SHARDS_FILE = "shards";
+
+    private ShardLayout() {
+    }
+
+    /**
+     * Records the configured number of shards for a new index, or fails when the existing index has another number.
+     */
+    public static void checkOrWrite(SourcesIndexProperties properties) {
+        var path = properties.path();
+        int configured = Math.max(1, properties.shards());
+        try {
+            var file = path.resolve(SHARDS_FILE);
+            int existing;
+            if (Files.exists(file)) {
+                existing = Integer.parseInt(Files.readString(file).strip());
+            } else {
+                existing = singleIndexExists(path) ? 1 : configured;
+            }
+            if (existing != configured) {
+                throw new IllegalStateException("The sources index at " + path + " has " + existing
+                        + " shards, but " + configured + " are configured. Remove the index and the ingestion "
+                        + "manifest, and ingest the sources again to change the number of shards.");
+            }
+            Files.createDirectories(path);
+            Files.writeString(file, Integer.toString(configured));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not check the shards of index " + path, e);
+        }
+    }
+
+    private static boolean singleIndexExists(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return false;
+        }
+        try (var directory = FSDirectory.open(path)) {
+            return DirectoryReader.indexExists(directory);
+        }
+    }
+}
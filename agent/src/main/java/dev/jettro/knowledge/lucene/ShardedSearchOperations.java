@@ -0,0 +1,231 @@
+package dev.jettro.knowledge.lucene;
+
+import com.embabel.agent.rag.lucene.LuceneSearchOperations;
+import com.embabel.agent.rag.model.Chunk;
+import com.embabel.agent.rag.model.NavigableDocument;
+import com.embabel.agent.rag.model.Retrievable;
+import com.embabel.agent.rag.service.TextSearch;
+import com.embabel.agent.rag.service.VectorSearch;
+import com.embabel.common.ai.model.EmbeddingService;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.SimpleSimilaritySearchResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The sources spread over several Lucene indexes, the shards, that are written and searched in parallel.
+ * <p>
+ * A document goes to the shard picked by the hash of its root URI, so all chunks of a document are in the same shard
+ * and deleting or replacing a document only touches that shard. Text searches are sent to every shard on a fork-join
+ * pool and the results are merged by score. Text scores are BM25 scores with the term statistics of each shard, which
+ * only compare well when the documents are spread evenly, as the hash does for a large corpus.
+ * </p>
+ * <p>
+ * Vector searches for chunks embed the query once and pass the vector to a single kNN query over all shards through
+ * the {@link SourcesIndexSearcher}, the chunks it finds are then taken from the shards. Vector scores are cosine
+ * similarities in Lucene's score scale and compare across shards. Vector searches for other types are sent to every
+ * shard like text searches.
+ * </p>
+ * <p>
+ * With a single shard every other call goes straight to that index.
+ * </p>
+ */
+public class ShardedSearchOperations implements VectorSearch, TextSearch, Closeable {
+
+    private final List<LuceneSearchOperations> shards;
+    private final SourcesIndexSearcher indexSearcher;
+    private final EmbeddingService embeddingService;
+    private final ForkJoinPool pool;
+
+    public ShardedSearchOperations(List<LuceneSearchOperations> shards,
+                                   SourcesIndexSearcher indexSearcher,
+                                   EmbeddingService embeddingService) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = List.copyOf(shards);
+        this.indexSearcher = indexSearcher;
+        this.embeddingService = embeddingService;
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("sources-shard-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Chunks the document into the shard of its root URI and returns the IDs of the chunks.
+     */
+    public List<String> writeAndChunkDocument(NavigableDocument root) {
+        return shardOf(root.getUri()).writeAndChunkDocument(root);
+    }
+
+    public void deleteRootAndDescendants(String uri) {
+        shardOf(uri).deleteRootAndDescendants(uri);
+    }
+
+    public boolean existsRootWithUri(String uri) {
+        return shardOf(uri).existsRootWithUri(uri);
+    }
+
+    /**
+     * Commits all shards in parallel.
+     */
+    public void commit() {
+        invokeAll(shards.stream().map(shard -> ForkJoinTask.adapt(shard::commit)).toList());
+    }
+
+    /**
+     * Runs the action for every item, with the items of a shard one after the other and the shards in parallel. Each
+     * shard has a single writer this way, and the writes to different shards do not wait for each other.
+     */
+    public <T> void forEachByShard(Collection<T> items, Function<T, String> rootUri, Consumer<T> action) {
+        if (shards.size() == 1) {
+            items.forEach(action);
+            return;
+        }
+        var byShard = new LinkedHashMap<Integer, List<T>>();
+        for (T item : items) {
+            byShard.computeIfAbsent(shardIndex(rootUri.apply(item)), index -> new ArrayList<>()).add(item);
+        }
+        invokeAll(byShard.values().stream()
+                .map(group -> ForkJoinTask.adapt(() -> group.forEach(action)))
+                .toList());
+    }
+
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> vectorSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                         @NotNull Class<T> clazz) {
+        if (clazz.isAssignableFrom(Chunk.class)) {
+            return nearestChunks(request, clazz);
+        }
+        if (shards.size() == 1) {
+            return shards.getFirst().vectorSearch(request, clazz);
+        }
+        // The shards only take the query as text, each of them embeds it
+        return merge(request, shard -> shard.vectorSearch(request, clazz));
+    }
+
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> textSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                       @NotNull Class<T> clazz) {
+        if (shards.size() == 1) {
+            return shards.getFirst().textSearch(request, clazz);
+        }
+        return merge(request, shard -> shard.textSearch(request, clazz));
+    }
+
+    @NotNull
+    @Override
+    public String getLuceneSyntaxNotes() {
+        return shards.getFirst().getLuceneSyntaxNotes();
+    }
+
+    @Override
+    public boolean supportsType(@NotNull String type) {
+        return shards.getFirst().supportsType(type);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+        shards.forEach(LuceneSearchOperations::close);
+    }
+
+    private <T extends Retrievable> List<SimilarityResult<T>> nearestChunks(TextSimilaritySearchRequest request,
+                                                                            Class<T> clazz) {
+        var vector = embeddingService.embed(request.getQuery());
+        List<SourcesIndexSearcher.ScoredId> nearest;
+        try {
+            nearest = indexSearcher.nearest(vector, request.getTopK()).stream()
+                    .filter(hit -> hit.score() >= request.getSimilarityThreshold())
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not search the sources index", e);
+        }
+        if (nearest.isEmpty()) {
+            return List.of();
+        }
+
+        var chunks = chunksById(nearest.stream().map(SourcesIndexSearcher.ScoredId::id).toList());
+        var results = new ArrayList<SimilarityResult<T>>(nearest.size());
+        for (SourcesIndexSearcher.ScoredId hit : nearest) {
+            // A chunk that was deleted after the reader was refreshed is left out
+            var chunk = chunks.get(hit.id());
+            if (chunk != null) {
+                results.add(new SimpleSimilaritySearchResult<>(clazz.cast(chunk), hit.score()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The chunks with the IDs, taken from all shards in parallel because an ID does not tell the shard.
+     */
+    private Map<String, Chunk> chunksById(List<String> ids) {
+        var tasks = shards.stream()
+                .map(shard -> ForkJoinTask.adapt(() -> shard.findAllChunksById(ids)))
+                .toList();
+        invokeAll(tasks);
+        var chunks = new HashMap<String, Chunk>();
+        tasks.forEach(task -> task.join().forEach(chunk -> chunks.put(chunk.getId(), chunk)));
+        return chunks;
+    }
+
+    private <T extends Retrievable> List<SimilarityResult<T>> merge(
+            TextSimilaritySearchRequest request,
+            Function<LuceneSearchOperations, List<SimilarityResult<T>>> search) {
+        var tasks = shards.stream()
+                .map(shard -> ForkJoinTask.adapt(() -> search.apply(shard)))
+                .toList();
+        invokeAll(tasks);
+        var merged = new ArrayList<SimilarityResult<T>>();
+        tasks.forEach(task -> merged.addAll(task.join()));
+        merged.sort(Comparator.comparingDouble(SimilarityResult<T>::getScore).reversed());
+        return merged.size() > request.getTopK() ? List.copyOf(merged.subList(0, request.getTopK())) : merged;
+    }
+
+    /**
+     * Runs the tasks on the pool and waits for all of them, the first failure is rethrown.
+     */
+    private void invokeAll(List<? extends ForkJoinTask<?>> tasks) {
+        tasks.forEach(pool::execute);
+        RuntimeException failure = null;
+        for (ForkJoinTask<?> task : tasks) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private LuceneSearchOperations shardOf(String rootUri) {
+        return shards.get(shardIndex(rootUri));
+    }
+
+    private int shardIndex(String rootUri) {
+        return Math.floorMod(rootUri.hashCode(), shards.size());
+    }
+}
@@ -0,0 +1,115 @@
+package dev.jettro.knowledge.lucene;
+
+import com.embabel.agent.rag.model.Retrievable;
+import com.embabel.agent.rag.service.TextSearch;
+import com.embabel.agent.rag.service.VectorSearch;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * The Lucene index over the sources, with all its shards, opened on a background thread so startup does not wait
+ * for the chunks to be loaded.
+ * <p>
+ * {@link #open()} starts opening the index and returns immediately. Callers that need the index block in
+ * {@link #operations()} until it is open, searches through this class do the same. Use {@link #isOpen()} to check
+ * without blocking, the readiness of the application depends on it.
+ * </p>
+ */
+public class SourcesIndex implements VectorSearch, TextSearch, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SourcesIndex.class);
+
+    private final Supplier<ShardedSearchOperations> opener;
+    private final CompletableFuture<ShardedSearchOperations> operations = new CompletableFuture<>();
+
+    private volatile boolean opening;
+
+    public SourcesIndex(Supplier<ShardedSearchOperations> opener) {
+        this.opener = opener;
+    }
+
+    /**
+     * Starts opening the index on a background thread, calling it again has no effect.
+     */
+    public synchronized void open() {
+        if (opening) {
+            return;
+        }
+        opening = true;
+        Thread.ofPlatform().name("sources-index-open").daemon().start(() -> {
+            long start = System.nanoTime();
+            try {
+                operations.complete(opener.get());
+                logger.info("Opened the sources index in {} ms", (System.nanoTime() - start) / 1_000_000);
+            } catch (Throwable e) {
+                // Errors too, otherwise callers of operations() wait forever
+                logger.error("Could not open the sources index", e);
+                operations.completeExceptionally(e);
+                if (e instanceof Error error) {
+                    throw error;
+                }
+            }
+        });
+    }
+
+    /**
+     * The operations on the index, waits until the index is open.
+     */
+    public ShardedSearchOperations operations() {
+        open();
+        try {
+            return operations.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("The sources index could not be opened", e.getCause());
+        }
+    }
+
+    public boolean isOpen() {
+        return operations.isDone() && !operations.isCompletedExceptionally();
+    }
+
+    /**
+     * Completes when the index is open, or with the error that kept it from opening.
+     */
+    public CompletableFuture<ShardedSearchOperations> whenOpen() {
+        return operations.copy();
+    }
+
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> vectorSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                         @NotNull Class<T> clazz) {
+        return operations().vectorSearch(request, clazz);
+    }
+
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> textSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                       @NotNull Class<T> clazz) {
+        return operations().textSearch(request, clazz);
+    }
+
+    @NotNull
+    @Override
+    public String getLuceneSyntaxNotes() {
+        return operations().getLuceneSyntaxNotes();
+    }
+
+    @Override
+    public boolean supportsType(@NotNull String type) {
+        return operations().supportsType(type);
+    }
+
+    @Override
+    public void close() {
+        if (isOpen()) {
+            operations.join().close();
+        }
+    }
+}
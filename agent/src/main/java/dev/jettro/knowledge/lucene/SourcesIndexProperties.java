@@ -0,0 +1,54 @@
+package dev.jettro.knowledge.lucene;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Configuration of the Lucene index with the chunks of the sources.
+ * <p>
+ * With a quantized {@code vectorFormat} the graph is searched with the quantized vectors, and the best
+ * {@code topK * rescoreOversample} candidates are rescored with the full precision vectors. Changing the format of an
+ * existing index rewrites it at startup.
+ * </p>
+ * <p>
+ * With more than one shard the shards are kept in {@code shard-<n>} directories under the path, a single shard is the
+ * index at the path itself.
+ * </p>
+ *
+ * @param path              Directory of the index.
+ * @param vectorFormat      How the chunk embeddings are stored.
+ * @param maxConn           Maximum number of neighbours per node in the HNSW graph.
+ * @param beamWidth         Number of candidates considered when inserting a node in the HNSW graph.
+ * @param rescoreOversample Factor of extra candidates retrieved for full precision rescoring.
+ * @param idField           Field that holds the chunk ID in the index.
+ * @param embeddingField    Vector field that holds the chunk embedding in the index.
+ * @param refreshInterval   Interval at which the reader of the index picks up committed changes.
+ * @param shards            Number of indexes the documents are spread over, see {@link ShardedSearchOperations}.
+ */
+@ConfigurationProperties(prefix = "knowledge.search.index")
+public record SourcesIndexProperties(
+        @DefaultValue("./.lucene-index") Path path,
+        @DefaultValue("HNSW") VectorFormat vectorFormat,
+        @DefaultValue("16") int maxConn,
+        @DefaultValue("100") int beamWidth,
+        @DefaultValue("3") int rescoreOversample,
+        @DefaultValue("id") String idField,
+        @DefaultValue("embedding") String embeddingField,
+        @DefaultValue("1s") Duration refreshInterval,
+        @DefaultValue("1") int shards) {
+
+    /**
+     * Directories of the shards, in shard order.
+     */
+    public List<Path> shardPaths() {
+        if (shards <= 1) {
+            return List.of(path);
+        }
+        return IntStream.range(0, shards).mapToObj(shard -> path.resolve("shard-" + shard)).toList();
+    }
+}
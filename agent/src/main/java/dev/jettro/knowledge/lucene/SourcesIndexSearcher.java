@@ -0,0 +1,178 @@
+package dev.jettro.knowledge.lucene;
+
+import dev.jettro.knowledge.ingest.SourcesIndexChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only view of the sources index for our own queries, separate from the writer the ingestion uses.
+ * <p>
+ * The vector searches of the chat run here, through {@link ShardedSearchOperations}, as do the full precision rescoring
+ * and the warm-up. The index is opened with {@link FSDirectory#open}, which memory maps it on 64-bit JVMs, so reads are
+ * served from the page cache without copying into the heap and do not wait for the writer. Searchers come from a
+ * {@link SearcherManager} that is refreshed in the background at the refresh interval and right after ingestion, so a
+ * search never pays for reopening the index and sees commits within the interval. The index is opened on first use,
+ * it may not exist before the first ingestion.
+ * </p>
+ * <p>
+ * A sharded index has a searcher manager per shard, a search sees all shards through a single {@link MultiReader}.
+ * </p>
+ */
+@Component
+public class SourcesIndexSearcher {
+    private static final Logger logger = LoggerFactory.getLogger(SourcesIndexSearcher.class);
+
+    private final List<Path> shardPaths;
+    private final String idField;
+    private final String embeddingField;
+    private final Directory[] directories;
+    private final SearcherManager[] searcherManagers;
+    private final ScheduledExecutorService refresher;
+
+    public SourcesIndexSearcher(SourcesIndexProperties properties) {
+        this.shardPaths = properties.shardPaths();
+        this.idField = properties.idField();
+        this.embeddingField = properties.embeddingField();
+        this.directories = new Directory[shardPaths.size()];
+        this.searcherManagers = new SearcherManager[shardPaths.size()];
+        this.refresher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("sources-index-refresh").daemon().factory());
+        long interval = properties.refreshInterval().toMillis();
+        refresher.scheduleWithFixedDelay(this::maybeRefresh, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the search with a current searcher, returns {@code null} when there is no index yet.
+     */
+    public <R> R search(IOFunction<IndexSearcher, R> search) throws IOException {
+        var managers = searcherManagers();
+        if (managers.isEmpty()) {
+            return null;
+        }
+        if (managers.size() == 1) {
+            var manager = managers.getFirst();
+            var searcher = manager.acquire();
+            try {
+                return search.apply(searcher);
+            } finally {
+                manager.release(searcher);
+            }
+        }
+
+        var searchers = new ArrayList<IndexSearcher>(managers.size());
+        try {
+            for (SearcherManager manager : managers) {
+                searchers.add(manager.acquire());
+            }
+            var readers = searchers.stream().map(IndexSearcher::getIndexReader).toArray(IndexReader[]::new);
+            try (var reader = new MultiReader(readers, false)) {
+                return search.apply(new IndexSearcher(reader));
+            }
+        } finally {
+            for (int i = 0; i < searchers.size(); i++) {
+                managers.get(i).release(searchers.get(i));
+            }
+        }
+    }
+
+    /**
+     * IDs of the chunks with the embeddings nearest to the vector, best first, with their scores in Lucene's score
+     * scale. Empty when there is no index yet.
+     */
+    public List<ScoredId> nearest(float[] vector, int k) throws IOException {
+        var nearest = search(searcher -> {
+            var topDocs = searcher.search(new KnnFloatVectorQuery(embeddingField, vector, k), k);
+            var storedFields = searcher.storedFields();
+            var ids = new ArrayList<ScoredId>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                var id = storedFields.document(scoreDoc.doc, Set.of(idField)).get(idField);
+                if (id != null) {
+                    ids.add(new ScoredId(id, scoreDoc.score));
+                }
+            }
+            return ids;
+        });
+        return nearest == null ? List.of() : nearest;
+    }
+
+    /**
+     * Picks up changes committed to the index, without blocking searches.
+     */
+    public void maybeRefresh() {
+        try {
+            for (SearcherManager manager : searcherManagers()) {
+                manager.maybeRefresh();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not refresh the reader of the sources index", e);
+        }
+    }
+
+    @EventListener
+    public void onSourcesIndexChanged(SourcesIndexChangedEvent event) {
+        maybeRefresh();
+    }
+
+    /**
+     * Managers of the shards that have an index, shards are opened once they have one.
+     */
+    private synchronized List<SearcherManager> searcherManagers() throws IOException {
+        var managers = new ArrayList<SearcherManager>(searcherManagers.length);
+        for (int shard = 0; shard < searcherManagers.length; shard++) {
+            if (searcherManagers[shard] == null) {
+                if (directories[shard] == null) {
+                    directories[shard] = FSDirectory.open(shardPaths.get(shard));
+                }
+                if (!DirectoryReader.indexExists(directories[shard])) {
+                    continue;
+                }
+                searcherManagers[shard] = new SearcherManager(directories[shard], null);
+                logger.info("Opened {} reader for the sources index at {}",
+                        directories[shard].getClass().getSimpleName(), shardPaths.get(shard));
+            }
+            managers.add(searcherManagers[shard]);
+        }
+        return managers;
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        refresher.shutdownNow();
+        for (int shard = 0; shard < searcherManagers.length; shard++) {
+            if (searcherManagers[shard] != null) {
+                searcherManagers[shard].close();
+            }
+            if (directories[shard] != null) {
+                directories[shard].close();
+            }
+        }
+    }
+
+    /**
+     * A chunk found by a vector search.
+     */
+    public record ScoredId(String id, double score) {
+    }
+}
@@ -0,0 +1,39 @@
+package dev.jettro.knowledge.lucene;
+
+import org.apache.lucene.codecs.Codec;
+
+/**
+ * Ways to store the vectors of a Lucene index. The quantized formats keep the HNSW graph and the vectors it is
+ * searched with small, at the cost of recall, the full precision vectors stay on disk for rescoring.
+ */
+public enum VectorFormat {
+    /**
+     * Full precision float vectors.
+     */
+    HNSW,
+    /**
+     * One byte per dimension, about a quarter of the memory of full precision.
+     */
+    INT8,
+    /**
+     * Half a byte per dimension.
+     */
+    INT4,
+    /**
+     * One bit per dimension, the smallest and the least precise.
+     */
+    BINARY;
+
+    public Codec codec(int maxConn, int beamWidth) {
+        return switch (this) {
+            case HNSW -> KnnVectorCodecs.hnsw(maxConn, beamWidth);
+            case INT8 -> KnnVectorCodecs.scalarQuantizedHnsw(maxConn, beamWidth, 7);
+            case INT4 -> KnnVectorCodecs.scalarQuantizedHnsw(maxConn, beamWidth, 4);
+            case BINARY -> KnnVectorCodecs.binaryQuantizedHnsw(maxConn, beamWidth);
+        };
+    }
+
+    public boolean isQuantized() {
+        return this != HNSW;
+    }
+}
@@ -0,0 +1,126 @@
+package dev.jettro.knowledge.lucene;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites an existing index when its vectors are stored in another {@link VectorFormat} than the configured one.
+ * <p>
+ * The format an index was written with is kept in a {@code vector-format} file in the index directory, an index
+ * without that file was written with {@link VectorFormat#HNSW}. The index is copied segment by segment into a new
+ * directory with the new codec, and the new directory replaces the old one only after it was committed. A failed
+ * migration leaves the old index in place. Run the migration before anything opens the index.
+ * </p>
+ */
+public final class VectorFormatMigration {
+    private static final Logger logger = LoggerFactory.getLogger(VectorFormatMigration.class);
+    static final String FORMAT_FILE = "vector-format";
+
+    private VectorFormatMigration() {
+    }
+
+    /**
+     * Rewrites the index, or each of its shards, in the format of the properties, when needed.
+     */
+    public static void migrateIfNeeded(SourcesIndexProperties properties) {
+        for (Path path : properties.shardPaths()) {
+            migrateIfNeeded(path, properties);
+        }
+    }
+
+    private static void migrateIfNeeded(Path path, SourcesIndexProperties properties) {
+        var target = properties.vectorFormat();
+        try {
+            if (!indexExists(path)) {
+                writeFormat(path, target);
+                return;
+            }
+            var current = readFormat(path);
+            if (current == target) {
+                return;
+            }
+            logger.info("Index {} stores vectors as {}, rewriting it as {}", path, current, target);
+            rewrite(path, target, properties.maxConn(), properties.beamWidth());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not migrate the vector format of index " + path, e);
+        }
+    }
+
+    private static boolean indexExists(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return false;
+        }
+        try (var directory = FSDirectory.open(path)) {
+            return DirectoryReader.indexExists(directory);
+        }
+    }
+
+    static VectorFormat readFormat(Path path) throws IOException {
+        var file = path.resolve(FORMAT_FILE);
+        return Files.exists(file) ? VectorFormat.valueOf(Files.readString(file).strip()) : VectorFormat.HNSW;
+    }
+
+    private static void rewrite(Path path, VectorFormat format, int maxConn, int beamWidth) throws IOException {
+        var migrated = path.resolveSibling(path.getFileName() + ".migrating");
+        deleteRecursively(migrated);
+
+        long start = System.nanoTime();
+        try (var source = FSDirectory.open(path);
+             var reader = DirectoryReader.open(source);
+             var target = FSDirectory.open(migrated)) {
+            var config = new IndexWriterConfig()
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                    .setCodec(format.codec(maxConn, beamWidth));
+            try (var writer = new IndexWriter(target, config)) {
+                var leaves = reader.leaves().stream()
+                        .map(leaf -> {
+                            try {
+                                return SlowCodecReaderWrapper.wrap(leaf.reader());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .toArray(CodecReader[]::new);
+                writer.addIndexes(leaves);
+                writer.forceMerge(1);
+                writer.commit();
+            }
+            logger.info("Rewrote {} documents of index {} in {} ms", reader.numDocs(), path,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        writeFormat(migrated, format);
+
+        // Swap the directories, the old index is only removed once the new one is in place
+        var previous = path.resolveSibling(path.getFileName() + ".previous");
+        deleteRecursively(previous);
+        Files.move(path, previous, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(migrated, path, StandardCopyOption.ATOMIC_MOVE);
+        deleteRecursively(previous);
+    }
+
+    private static void writeFormat(Path path, VectorFormat format) throws IOException {
+        Files.createDirectories(path);
+        Files.writeString(path.resolve(FORMAT_FILE), format.name());
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
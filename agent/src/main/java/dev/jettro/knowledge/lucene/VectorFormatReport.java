@@ -0,0 +1,181 @@
+package dev.jettro.knowledge.lucene;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Measures recall and size of every {@link VectorFormat} on a sample of the vectors of an index.
+ * <p>
+ * The sampled vectors are written to a temporary index per format. For a number of sampled queries the top
+ * {@code k} of a graph search is compared with the exact top {@code k}, computed by brute force. Sizes are those of
+ * the vector files: {@code totalBytes} is everything on disk, {@code searchBytes} is what a graph search reads, the
+ * graph and the vectors it is searched with. For the quantized formats that excludes the full precision vectors,
+ * which are only read for rescoring. A sharded index is sampled from its first shard, the hash spreads the documents
+ * evenly over the shards.
+ * </p>
+ */
+public final class VectorFormatReport {
+    private static final String FIELD = "vector";
+    private static final String FIELD_ORDINAL = "ordinal";
+    private static final Set<String> FULL_PRECISION_EXTENSIONS = Set.of("vec", "vemf");
+
+    /**
+     * Result for one format.
+     *
+     * @param format      The vector format.
+     * @param recall      Average fraction of the exact top {@code k} that the graph search found.
+     * @param totalBytes  Size of the vector files on disk.
+     * @param searchBytes Size of the files a graph search reads.
+     */
+    public record Row(VectorFormat format, double recall, long totalBytes, long searchBytes) {
+    }
+
+    private VectorFormatReport() {
+    }
+
+    public static List<Row> measure(SourcesIndexProperties properties, int sampleSize, int queries, int k)
+            throws IOException {
+        var vectors = sample(properties.shardPaths().getFirst(), properties.embeddingField(), sampleSize);
+        if (vectors.isEmpty()) {
+            return List.of();
+        }
+        var random = new Random(42);
+        var queryOrdinals = random.ints(Math.min(queries, vectors.size()), 0, vectors.size()).toArray();
+        var exact = new ArrayList<Set<Integer>>();
+        for (int ordinal : queryOrdinals) {
+            exact.add(exactTopK(vectors, vectors.get(ordinal), k));
+        }
+
+        var rows = new ArrayList<Row>();
+        for (VectorFormat format : VectorFormat.values()) {
+            var directory = Files.createTempDirectory("vector-format-" + format.name().toLowerCase(Locale.ROOT));
+            try {
+                write(directory, vectors, format.codec(properties.maxConn(), properties.beamWidth()));
+                double recall = recall(directory, vectors, queryOrdinals, exact, k);
+                rows.add(new Row(format, recall, size(directory, true), size(directory, !format.isQuantized())));
+            } finally {
+                deleteRecursively(directory);
+            }
+        }
+        return rows;
+    }
+
+    private static List<float[]> sample(Path index, String field, int sampleSize) throws IOException {
+        var vectors = new ArrayList<float[]>();
+        try (var directory = FSDirectory.open(index); var reader = DirectoryReader.open(directory)) {
+            for (var leaf : reader.leaves()) {
+                var values = leaf.reader().getFloatVectorValues(field);
+                if (values == null) {
+                    continue;
+                }
+                for (int ordinal = 0; ordinal < values.size() && vectors.size() < sampleSize; ordinal++) {
+                    vectors.add(values.vectorValue(ordinal).clone());
+                }
+            }
+        }
+        return vectors;
+    }
+
+    private static Set<Integer> exactTopK(List<float[]> vectors, float[] query, int k) {
+        var ordinals = new Integer[vectors.size()];
+        var scores = new float[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            ordinals[i] = i;
+            scores[i] = VectorSimilarityFunction.COSINE.compare(query, vectors.get(i));
+        }
+        Arrays.sort(ordinals, Comparator.<Integer>comparingDouble(i -> scores[i]).reversed());
+        return new HashSet<>(Arrays.asList(ordinals).subList(0, Math.min(k, ordinals.length)));
+    }
+
+    private static void write(Path path, List<float[]> vectors, Codec codec)
+            throws IOException {
+        try (var directory = FSDirectory.open(path);
+             var writer = new IndexWriter(directory, writerConfig(codec))) {
+            for (int i = 0; i < vectors.size(); i++) {
+                var document = new Document();
+                document.add(new KnnFloatVectorField(FIELD, vectors.get(i), VectorSimilarityFunction.COSINE));
+                document.add(new StoredField(FIELD_ORDINAL, i));
+                writer.addDocument(document);
+            }
+            writer.forceMerge(1);
+            writer.commit();
+        }
+    }
+
+    /**
+     * Compound files would hide the size of the vector files.
+     */
+    private static IndexWriterConfig writerConfig(Codec codec) {
+        var mergePolicy = new TieredMergePolicy();
+        mergePolicy.setNoCFSRatio(0.0);
+        return new IndexWriterConfig()
+                .setCodec(codec)
+                .setUseCompoundFile(false)
+                .setMergePolicy(mergePolicy);
+    }
+
+    private static double recall(Path path, List<float[]> vectors, int[] queryOrdinals, List<Set<Integer>> exact,
+                                 int k) throws IOException {
+        double total = 0;
+        try (var directory = FSDirectory.open(path); var reader = DirectoryReader.open(directory)) {
+            var searcher = new IndexSearcher(reader);
+            var storedFields = searcher.storedFields();
+            for (int q = 0; q < queryOrdinals.length; q++) {
+                var topDocs = searcher.search(new KnnFloatVectorQuery(FIELD, vectors.get(queryOrdinals[q]), k), k);
+                int found = 0;
+                for (var scoreDoc : topDocs.scoreDocs) {
+                    int ordinal = storedFields.document(scoreDoc.doc).getField(FIELD_ORDINAL).numericValue().intValue();
+                    if (exact.get(q).contains(ordinal)) {
+                        found++;
+                    }
+                }
+                total += (double) found / exact.get(q).size();
+            }
+        }
+        return total / queryOrdinals.length;
+    }
+
+    /**
+     * Size of the vector files, optionally without the full precision vectors that only rescoring reads.
+     */
+    private static long size(Path path, boolean includeFullPrecision) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.list(path)) {
+            for (Path file : files.toList()) {
+                var name = file.getFileName().toString();
+                var extension = name.substring(name.lastIndexOf('.') + 1);
+                if (!extension.startsWith("ve")) {
+                    continue;
+                }
+                if (includeFullPrecision || !FULL_PRECISION_EXTENSIONS.contains(extension)) {
+                    size += Files.size(file);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package dev.jettro.knowledge.lucene;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Actuator endpoint {@code /actuator/vectorformats} with the recall and size of each {@link VectorFormat} for a
+ * sample of the sources index, to choose a format before migrating. Building the sample indexes takes a while.
+ */
+@Component
+@Endpoint(id = "vectorformats")
+public class VectorFormatReportEndpoint {
+
+    private final SourcesIndexProperties properties;
+
+    public VectorFormatReportEndpoint(SourcesIndexProperties properties) {
+        this.properties = properties;
+    }
+
+    @ReadOperation
+    public Report report(@Nullable Integer sampleSize, @Nullable Integer queries, @Nullable Integer k) {
+        try {
+            return new Report(properties.vectorFormat(), VectorFormatReport.measure(
+                    properties,
+                    sampleSize == null ? 10_000 : sampleSize,
+                    queries == null ? 100 : queries,
+                    k == null ? 10 : k));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not measure the vector formats of " + properties.path(), e);
+        }
+    }
+
+    public record Report(VectorFormat current, List<VectorFormatReport.Row> formats) {
+    }
+}
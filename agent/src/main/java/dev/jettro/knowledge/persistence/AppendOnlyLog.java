@@ -0,0 +1,155 @@
+package dev.jettro.knowledge.persistence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Log of records of one type, one JSON record per line. Records are appended as they happen, reading the log back
+ * replays them in order. A partially written last line, left by a crash, is skipped when the log is read.
+ * <p>
+ * The owner of the log decides which records are still live, {@link #rewrite(Iterable)} replaces the log with only
+ * those through {@link AtomicFiles}. {@link #lines()} counts the records in the log, to decide when that pays off.
+ * </p>
+ * <p>
+ * Not thread-safe, the owner synchronizes access together with its own state.
+ * </p>
+ */
+public class AppendOnlyLog<T> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AppendOnlyLog.class);
+
+    private final Path path;
+    private final Class<T> type;
+    private final String description;
+    private final ObjectMapper objectMapper;
+    private BufferedWriter writer;
+    private int lines;
+
+    /**
+     * @param description What the log holds, used in log messages and errors, like "entity log".
+     */
+    public AppendOnlyLog(Path path, Class<T> type, String description, ObjectMapper objectMapper) {
+        this.path = path;
+        this.type = type;
+        this.description = description;
+        this.objectMapper = objectMapper;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * Reads the log from the start and passes every readable record to the consumer.
+     */
+    public void replay(Consumer<T> consumer) {
+        lines = 0;
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                lines++;
+                T record;
+                try {
+                    record = objectMapper.readValue(line, type);
+                } catch (JsonProcessingException e) {
+                    logger.warn("Skipping unreadable record {} in {} {}", lines, description, path);
+                    continue;
+                }
+                consumer.accept(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + description + " " + path, e);
+        }
+    }
+
+    public void append(T record) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(objectMapper.writeValueAsString(record));
+            writer.newLine();
+            writer.flush();
+            lines++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to " + description + " " + path, e);
+        }
+    }
+
+    /**
+     * Number of records in the log, including records that were overwritten or deleted later.
+     */
+    public int lines() {
+        return lines;
+    }
+
+    /**
+     * Sets the number of records in the log when the state was restored from a {@link LogSnapshot} instead of
+     * replaying the log.
+     */
+    public void restoredLines(int lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * Replaces the log with only the given records.
+     */
+    public void rewrite(Iterable<T> live) {
+        try {
+            closeWriter();
+            var count = new int[1];
+            AtomicFiles.write(path, out -> {
+                var rewritten = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                for (T record : live) {
+                    rewritten.write(objectMapper.writeValueAsString(record));
+                    rewritten.newLine();
+                    count[0]++;
+                }
+                rewritten.flush();
+            });
+            logger.info("Compacted {} {} from {} to {} records", description, path, lines, count[0]);
+            lines = count[0];
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not compact " + description + " " + path, e);
+        }
+    }
+
+    /**
+     * Closes the file until the next append, so the log can be snapshotted as it is on disk.
+     */
+    public void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeWriter();
+    }
+}
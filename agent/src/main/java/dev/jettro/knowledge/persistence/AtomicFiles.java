@@ -0,0 +1,60 @@
+package dev.jettro.knowledge.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces files so that a crash leaves either the old or the new content, never an empty or partial file.
+ * <p>
+ * The content is written to a temporary file next to the target and forced to disk before the temporary file is
+ * moved over the target, without the fsync the rename can reach the disk before the data does. The directory is
+ * synced after the move where the platform allows it.
+ * </p>
+ */
+public final class AtomicFiles {
+    private static final Logger logger = LoggerFactory.getLogger(AtomicFiles.class);
+
+    @FunctionalInterface
+    public interface Content {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    public static void write(Path target, Content content) throws IOException {
+        var parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        var tempFile = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            try (var channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                var out = Channels.newOutputStream(channel);
+                content.write(out);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        syncDirectory(parent);
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory, the move itself is still atomic there
+            logger.debug("Could not sync directory {}", directory, e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package dev.jettro.knowledge.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+
+/**
+ * Binary snapshot of the state replayed from an append-only log, written at shutdown so the next startup reads the
+ * state in one pass instead of parsing every JSON line of the log.
+ * <p>
+ * The snapshot records the size and modification time of the log it was taken from. It is only used when the log
+ * is still exactly like that, after a crash or any write that did not make it into a snapshot the log is replayed as
+ * before. The body is written by the store that owns the log.
+ * </p>
+ */
+public final class LogSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(LogSnapshot.class);
+    private static final int MAGIC = 0x4B534E50;
+    private static final int VERSION = 1;
+
+    @FunctionalInterface
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private LogSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the current state of the log, replacing an earlier snapshot through {@link AtomicFiles}.
+     * Failures are logged, the log stays the source of truth.
+     */
+    public static void write(Path snapshot, Path log, String kind, Writer body) {
+        if (!Files.exists(log)) {
+            return;
+        }
+        try {
+            var attributes = Files.readAttributes(log, BasicFileAttributes.class);
+            AtomicFiles.write(snapshot, stream -> {
+                var out = new DataOutputStream(new BufferedOutputStream(stream));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(kind);
+                out.writeLong(attributes.size());
+                out.writeLong(attributes.lastModifiedTime().toMillis());
+                body.write(out);
+                out.flush();
+            });
+            logger.info("Wrote {} snapshot {}", kind, snapshot);
+        } catch (IOException e) {
+            logger.warn("Could not write {} snapshot {}, the log is replayed at the next startup", kind, snapshot, e);
+        }
+    }
+
+    /**
+     * Reads the snapshot when it was taken from the log as it is now, otherwise returns nothing and the caller
+     * replays the log.
+     */
+    public static <T> Optional<T> read(Path snapshot, Path log, String kind, Reader<T> body) {
+        if (!Files.exists(snapshot) || !Files.exists(log)) {
+            return Optional.empty();
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            var attributes = Files.readAttributes(log, BasicFileAttributes.class);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !kind.equals(in.readUTF())) {
+                logger.warn("Ignoring {} snapshot {}, it has an unknown format", kind, snapshot);
+                return Optional.empty();
+            }
+            if (in.readLong() != attributes.size() || in.readLong() != attributes.lastModifiedTime().toMillis()) {
+                logger.info("The {} snapshot {} is older than the log, replaying the log", kind, snapshot);
+                return Optional.empty();
+            }
+            var state = body.read(in);
+            logger.info("Restored {} from snapshot {}", kind, snapshot);
+            return Optional.of(state);
+        } catch (IOException e) {
+            logger.warn("Could not read {} snapshot {}, replaying the log", kind, snapshot, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes a string that may be {@code null} and longer than {@link DataOutputStream#writeUTF(String)} allows.
+     */
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
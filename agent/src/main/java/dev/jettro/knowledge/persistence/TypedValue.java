@@ -0,0 +1,122 @@
+package dev.jettro.knowledge.persistence;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A property value stored together with its type, so it is read back as the same Java type. Plain JSON turns a
+ * {@code long} that fits in an int into an {@link Integer} and a date into a string.
+ * <p>
+ * Numbers, booleans, strings, dates and times, UUIDs, lists and maps of those are typed. Other values are stored as
+ * plain JSON and read back the way Jackson reads untyped JSON. Values that were stored as plain JSON before types
+ * were recorded are read the same way.
+ * </p>
+ *
+ * @param type  The type of the value, {@code json} for a value without type.
+ * @param value The value in a form JSON keeps as is.
+ */
+public record TypedValue(String type, Object value) {
+    private static final String UNTYPED = "json";
+
+    /**
+     * Reads both the typed form and plain JSON values.
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    static TypedValue fromJson(Object json) {
+        if (json instanceof Map<?, ?> map && map.size() == 2
+                && map.get("type") instanceof String type && map.containsKey("value")) {
+            return new TypedValue(type, map.get("value"));
+        }
+        return new TypedValue(UNTYPED, json);
+    }
+
+    public static Map<String, TypedValue> wrap(Map<String, Object> properties) {
+        var wrapped = new LinkedHashMap<String, TypedValue>();
+        properties.forEach((key, value) -> wrapped.put(key, of(value)));
+        return wrapped;
+    }
+
+    public static Map<String, Object> unwrap(Map<String, TypedValue> properties) {
+        var unwrapped = new LinkedHashMap<String, Object>();
+        properties.forEach((key, value) -> unwrapped.put(key, value == null ? null : value.toValue()));
+        return unwrapped;
+    }
+
+    public static TypedValue of(Object value) {
+        return switch (value) {
+            case null -> new TypedValue("null", null);
+            case String string -> new TypedValue("string", string);
+            case Boolean bool -> new TypedValue("boolean", bool);
+            case Integer number -> new TypedValue("int", number);
+            case Long number -> new TypedValue("long", number);
+            case Short number -> new TypedValue("short", number);
+            case Byte number -> new TypedValue("byte", number);
+            case Double number -> new TypedValue("double", number);
+            case Float number -> new TypedValue("float", number);
+            case BigDecimal number -> new TypedValue("big-decimal", number.toString());
+            case BigInteger number -> new TypedValue("big-integer", number.toString());
+            case Instant instant -> new TypedValue("instant", instant.toString());
+            case LocalDate date -> new TypedValue("local-date", date.toString());
+            case LocalDateTime dateTime -> new TypedValue("local-date-time", dateTime.toString());
+            case OffsetDateTime dateTime -> new TypedValue("offset-date-time", dateTime.toString());
+            case ZonedDateTime dateTime -> new TypedValue("zoned-date-time", dateTime.toString());
+            case Date date -> new TypedValue("date", date.getTime());
+            case UUID uuid -> new TypedValue("uuid", uuid.toString());
+            case List<?> list -> new TypedValue("list", list.stream().map(TypedValue::of).toList());
+            case Set<?> set -> new TypedValue("set", set.stream().map(TypedValue::of).toList());
+            case Map<?, ?> map -> {
+                var entries = new LinkedHashMap<String, TypedValue>();
+                map.forEach((key, entry) -> entries.put(String.valueOf(key), of(entry)));
+                yield new TypedValue("map", entries);
+            }
+            default -> new TypedValue(UNTYPED, value);
+        };
+    }
+
+    public Object toValue() {
+        return switch (type) {
+            case "null" -> null;
+            case "string" -> value.toString();
+            case "boolean" -> value;
+            case "int" -> ((Number) value).intValue();
+            case "long" -> ((Number) value).longValue();
+            case "short" -> ((Number) value).shortValue();
+            case "byte" -> ((Number) value).byteValue();
+            case "double" -> ((Number) value).doubleValue();
+            case "float" -> ((Number) value).floatValue();
+            case "big-decimal" -> new BigDecimal(value.toString());
+            case "big-integer" -> new BigInteger(value.toString());
+            case "instant" -> Instant.parse(value.toString());
+            case "local-date" -> LocalDate.parse(value.toString());
+            case "local-date-time" -> LocalDateTime.parse(value.toString());
+            case "offset-date-time" -> OffsetDateTime.parse(value.toString());
+            case "zoned-date-time" -> ZonedDateTime.parse(value.toString());
+            case "date" -> new Date(((Number) value).longValue());
+            case "uuid" -> UUID.fromString(value.toString());
+            case "list" -> elements().toList();
+            case "set" -> elements().collect(LinkedHashSet::new, Set::add, Set::addAll);
+            case "map" -> {
+                var map = new LinkedHashMap<String, Object>();
+                ((Map<?, ?>) value).forEach((key, entry) -> map.put(String.valueOf(key), typed(entry).toValue()));
+                yield map;
+            }
+            default -> value;
+        };
+    }
+
+    private Stream<Object> elements() {
+        return ((Collection<?>) value).stream().map(element -> typed(element).toValue());
+    }
+
+    /**
+     * Nested values are {@link TypedValue}s when they were just created and maps when they were read from JSON.
+     */
+    private static TypedValue typed(Object element) {
+        return element instanceof TypedValue typedValue ? typedValue : fromJson(element);
+    }
+}
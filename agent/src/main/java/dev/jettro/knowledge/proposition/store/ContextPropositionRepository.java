@@ -0,0 +1,106 @@
+package dev.jettro.knowledge.proposition.store;
+
+import com.embabel.agent.rag.model.RetrievableIdentifier;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import com.embabel.dice.proposition.Proposition;
+import com.embabel.dice.proposition.PropositionRepository;
+import com.embabel.dice.proposition.PropositionStatus;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * {@link PropositionRepository} view on a {@link LucenePropositionRepository} that only sees the partition of one
+ * context. Saves are passed on as is, the saved proposition determines its partition.
+ */
+class ContextPropositionRepository implements PropositionRepository {
+
+    private final LucenePropositionRepository repository;
+    private final String contextId;
+
+    ContextPropositionRepository(LucenePropositionRepository repository, String contextId) {
+        this.repository = repository;
+        this.contextId = contextId;
+    }
+
+    @NotNull
+    @Override
+    public Proposition save(@NotNull Proposition proposition) {
+        return repository.save(proposition);
+    }
+
+    @Nullable
+    @Override
+    public Proposition findById(@NotNull String id) {
+        var found = repository.findInPartition(contextId, new TermQuery(new Term(PropositionPartition.FIELD_ID, id)));
+        return found.isEmpty() ? null : found.getFirst();
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByEntity(@NotNull RetrievableIdentifier entityIdentifier) {
+        return repository.findInPartition(contextId,
+                new TermQuery(new Term(PropositionPartition.FIELD_MENTION, entityIdentifier.getId())));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findSimilar(@NotNull TextSimilaritySearchRequest request) {
+        return findSimilarWithScores(request).stream().map(SimilarityResult::getMatch).toList();
+    }
+
+    @NotNull
+    @Override
+    public List<SimilarityResult<Proposition>> findSimilarWithScores(@NotNull TextSimilaritySearchRequest request) {
+        return repository.findSimilarWithScores(contextId, request);
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByStatus(@NotNull PropositionStatus status) {
+        return repository.findInPartition(contextId,
+                new TermQuery(new Term(PropositionPartition.FIELD_STATUS, status.name())));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByGrounding(@NotNull String chunkId) {
+        return repository.findInPartition(contextId,
+                new TermQuery(new Term(PropositionPartition.FIELD_GROUNDING, chunkId)));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByMinLevel(int minLevel) {
+        return repository.findInPartition(contextId,
+                IntPoint.newRangeQuery(PropositionPartition.FIELD_LEVEL, minLevel, Integer.MAX_VALUE));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByContextIdValue(@NotNull String contextIdValue) {
+        return contextId.equals(contextIdValue) ? repository.findByContextIdValue(contextIdValue) : List.of();
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findAll() {
+        return repository.findInPartition(contextId, new MatchAllDocsQuery());
+    }
+
+    @Override
+    public boolean delete(@NotNull String id) {
+        return repository.delete(contextId, id);
+    }
+
+    @Override
+    public int count() {
+        return repository.count(contextId);
+    }
+}
@@ -0,0 +1,367 @@
+package dev.jettro.knowledge.proposition.store;
+
+import com.embabel.agent.rag.model.RetrievableIdentifier;
+import com.embabel.common.ai.model.EmbeddingService;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.SimpleSimilaritySearchResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import com.embabel.dice.proposition.EntityMention;
+import com.embabel.dice.proposition.Proposition;
+import com.embabel.dice.proposition.PropositionRepository;
+import com.embabel.dice.proposition.PropositionStatus;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PropositionRepository} that keeps propositions on disk in Lucene, with a separate index per context.
+ * <p>
+ * Nothing is loaded at startup, the index of a context is opened the first time that context is used. Lookups by
+ * status, mentioned entity, grounding chunk and level use keyword fields, similarity lookups use the vector field.
+ * Operations that are not scoped to a context, like {@link #findById(String)}, go through every partition on disk.
+ * Partitions that are not open yet are read with a short-lived reader for that, so these operations do not keep an
+ * index writer open for every context. Use {@link #forContext(String)} for a view that only sees the propositions of
+ * one context.
+ * </p>
+ * <p>
+ * Saving a proposition whose text did not change keeps its stored embedding, only new and reworded propositions are
+ * embedded.
+ * </p>
+ */
+public class LucenePropositionRepository implements PropositionRepository, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(LucenePropositionRepository.class);
+
+    private final Path root;
+    private final PropositionStoreProperties properties;
+    private final EmbeddingService embeddingService;
+    private final ObjectMapper objectMapper;
+    private final Map<String, PropositionPartition> partitions = new ConcurrentHashMap<>();
+
+    public LucenePropositionRepository(PropositionStoreProperties properties,
+                                       EmbeddingService embeddingService,
+                                       ObjectMapper objectMapper) {
+        this.root = properties.path();
+        this.properties = properties;
+        this.embeddingService = embeddingService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * View of this repository limited to a single context. Similarity lookups through the view only search the
+     * HNSW graph of that context, which keeps proposition revision independent of the number of other contexts.
+     */
+    public PropositionRepository forContext(String contextId) {
+        return new ContextPropositionRepository(this, contextId);
+    }
+
+    @NotNull
+    @Override
+    public Proposition save(@NotNull Proposition proposition) {
+        var partition = partition(proposition.getContextIdValue());
+        var stored = new StoredProposition(
+                proposition.getId(),
+                proposition.getStatus().name(),
+                proposition.getMentions().stream()
+                        .map(EntityMention::getResolvedId)
+                        .filter(Objects::nonNull)
+                        .toList(),
+                proposition.getMentions().stream()
+                        .map(mention -> normalizeName(mention.getName()))
+                        .toList(),
+                proposition.getGrounding(),
+                proposition.getLevel(),
+                embedding(partition, proposition),
+                toJson(proposition));
+        try {
+            partition.upsert(stored);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not save proposition " + proposition.getId(), e);
+        }
+        return proposition;
+    }
+
+    /**
+     * The stored embedding when the proposition was saved before with the same text, a new embedding otherwise.
+     */
+    private float[] embedding(PropositionPartition partition, Proposition proposition) {
+        try {
+            var existing = partition.read(searcher -> searcher.stored(proposition.getId()));
+            if (existing != null && existing.embedding() != null
+                    && proposition.getText().equals(fromJson(existing.json()).getText())) {
+                return existing.embedding();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read stored proposition {}, embedding it again", proposition.getId(), e);
+        }
+        return embeddingService.embed(proposition.getText());
+    }
+
+    @Nullable
+    @Override
+    public Proposition findById(@NotNull String id) {
+        var found = findInAllPartitions(new TermQuery(new Term(PropositionPartition.FIELD_ID, id)));
+        return found.isEmpty() ? null : found.getFirst();
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByEntity(@NotNull RetrievableIdentifier entityIdentifier) {
+        return findInAllPartitions(new TermQuery(new Term(PropositionPartition.FIELD_MENTION, entityIdentifier.getId())));
+    }
+
+    /**
+     * Propositions in the context that mention an entity by the given name, regardless of whether it was resolved.
+     */
+    public List<Proposition> findByMentionName(String contextId, String name) {
+        return findInPartition(contextId,
+                new TermQuery(new Term(PropositionPartition.FIELD_MENTION_NAME, normalizeName(name))));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findSimilar(@NotNull TextSimilaritySearchRequest request) {
+        return findSimilarWithScores(request).stream().map(SimilarityResult::getMatch).toList();
+    }
+
+    @NotNull
+    @Override
+    public List<SimilarityResult<Proposition>> findSimilarWithScores(@NotNull TextSimilaritySearchRequest request) {
+        var contextIds = contextIds();
+        if (contextIds.isEmpty()) {
+            return List.of();
+        }
+        var vector = embeddingService.embed(request.getQuery());
+        return similar(readAllPartitions(contextIds, searcher -> searcher.nearest(vector, request.getTopK(), null)),
+                request);
+    }
+
+    /**
+     * Similarity search limited to the propositions of a single context.
+     */
+    public List<SimilarityResult<Proposition>> findSimilarWithScores(String contextId,
+                                                                     TextSimilaritySearchRequest request) {
+        if (!partitionExists(contextId)) {
+            return List.of();
+        }
+        var vector = embeddingService.embed(request.getQuery());
+        try {
+            return similar(List.of(partition(contextId).nearest(vector, request.getTopK(), null)), request);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not search propositions of context " + contextId, e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByStatus(@NotNull PropositionStatus status) {
+        return findInAllPartitions(new TermQuery(new Term(PropositionPartition.FIELD_STATUS, status.name())));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByGrounding(@NotNull String chunkId) {
+        return findInAllPartitions(new TermQuery(new Term(PropositionPartition.FIELD_GROUNDING, chunkId)));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByMinLevel(int minLevel) {
+        return findInAllPartitions(IntPoint.newRangeQuery(PropositionPartition.FIELD_LEVEL, minLevel, Integer.MAX_VALUE));
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findByContextIdValue(@NotNull String contextIdValue) {
+        return findInPartition(contextIdValue, new MatchAllDocsQuery());
+    }
+
+    @NotNull
+    @Override
+    public List<Proposition> findAll() {
+        return findInAllPartitions(new MatchAllDocsQuery());
+    }
+
+    @Override
+    public boolean delete(@NotNull String id) {
+        var query = new TermQuery(new Term(PropositionPartition.FIELD_ID, id));
+        try {
+            for (String contextId : contextIds()) {
+                if (!read(contextId, searcher -> searcher.find(query, 1)).isEmpty()) {
+                    return partition(contextId).delete(id);
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete proposition " + id, e);
+        }
+    }
+
+    @Override
+    public int count() {
+        return readAllPartitions(contextIds(), PropositionPartition.Searcher::count).stream()
+                .mapToInt(Integer::intValue)
+                .sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (PropositionPartition partition : partitions.values()) {
+            partition.close();
+        }
+        partitions.clear();
+    }
+
+    private List<SimilarityResult<Proposition>> similar(List<List<PropositionPartition.Hit>> hitsPerPartition,
+                                                        TextSimilaritySearchRequest request) {
+        var results = new ArrayList<SimilarityResult<Proposition>>();
+        for (List<PropositionPartition.Hit> hits : hitsPerPartition) {
+            for (PropositionPartition.Hit hit : hits) {
+                if (hit.score() >= request.getSimilarityThreshold()) {
+                    results.add(new SimpleSimilaritySearchResult<>(fromJson(hit.json()), hit.score()));
+                }
+            }
+        }
+        results.sort(Comparator.comparingDouble(SimilarityResult<Proposition>::getScore).reversed());
+        return results.size() > request.getTopK() ? List.copyOf(results.subList(0, request.getTopK())) : results;
+    }
+
+    int count(String contextId) {
+        if (!partitionExists(contextId)) {
+            return 0;
+        }
+        try {
+            return partition(contextId).count();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not count propositions of context " + contextId, e);
+        }
+    }
+
+    boolean delete(String contextId, String id) {
+        if (!partitionExists(contextId)) {
+            return false;
+        }
+        try {
+            return partition(contextId).delete(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete proposition " + id, e);
+        }
+    }
+
+    List<Proposition> findInPartition(String contextId, Query query) {
+        if (!partitionExists(contextId)) {
+            return List.of();
+        }
+        try {
+            return partition(contextId).findAll(query).stream().map(hit -> fromJson(hit.json())).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not search propositions of context " + contextId, e);
+        }
+    }
+
+    private List<Proposition> findInAllPartitions(Query query) {
+        return readAllPartitions(contextIds(), searcher -> searcher.findAll(query)).stream()
+                .flatMap(List::stream)
+                .map(hit -> fromJson(hit.json()))
+                .toList();
+    }
+
+    private <R> List<R> readAllPartitions(Collection<String> contextIds, PropositionPartition.Read<R> read) {
+        var results = new ArrayList<R>(contextIds.size());
+        try {
+            for (String contextId : contextIds) {
+                results.add(read(contextId, read));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not search propositions", e);
+        }
+        return results;
+    }
+
+    /**
+     * Reads an open partition through its searcher and a partition that is not open from its last commit, without
+     * opening it.
+     */
+    private <R> R read(String contextId, PropositionPartition.Read<R> read) throws IOException {
+        var open = partitions.get(contextId);
+        if (open != null) {
+            return open.read(read);
+        }
+        return PropositionPartition.readCommitted(pathOf(contextId), properties, read);
+    }
+
+    private PropositionPartition partition(String contextId) {
+        return partitions.computeIfAbsent(contextId, id -> {
+            var path = pathOf(id);
+            logger.info("Opening proposition partition for context {} at {}", id, path);
+            try {
+                return new PropositionPartition(id, path, properties);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open proposition partition " + path, e);
+            }
+        });
+    }
+
+    private boolean partitionExists(String contextId) {
+        return partitions.containsKey(contextId) || Files.isDirectory(pathOf(contextId));
+    }
+
+    private Path pathOf(String contextId) {
+        return root.resolve(URLEncoder.encode(contextId, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The contexts that have a partition, open or on disk.
+     */
+    private Set<String> contextIds() {
+        var contextIds = new LinkedHashSet<>(partitions.keySet());
+        if (Files.isDirectory(root)) {
+            try (var directories = Files.list(root)) {
+                directories.filter(Files::isDirectory)
+                        .map(path -> URLDecoder.decode(path.getFileName().toString(), StandardCharsets.UTF_8))
+                        .forEach(contextIds::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not list proposition partitions in " + root, e);
+            }
+        }
+        return contextIds;
+    }
+
+    private String toJson(Proposition proposition) {
+        try {
+            return objectMapper.writeValueAsString(proposition);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize proposition " + proposition.getId(), e);
+        }
+    }
+
+    private Proposition fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, Proposition.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read stored proposition", e);
+        }
+    }
+
+    private static String normalizeName(String name) {
+        return name == null ? "" : name.strip().toLowerCase(Locale.ROOT);
+    }
+}
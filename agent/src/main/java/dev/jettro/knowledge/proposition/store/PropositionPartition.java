@@ -0,0 +1,246 @@
+package dev.jettro.knowledge.proposition.store;
+
+import dev.jettro.knowledge.lucene.KnnVectorCodecs;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single Lucene index holding the propositions of one context.
+ * <p>
+ * Every proposition is one document with its JSON representation stored, its embedding in a vector field and keyword
+ * fields for the lookups the repository supports: ID, status, mentioned entities, grounding chunks and level. Reads go
+ * through a near-real-time {@link SearcherManager}, so writes are visible right after they are made. Each write is
+ * committed, a proposition costs an LLM call to produce and should survive a crash.
+ * </p>
+ * <p>
+ * Partitions that are not open can be read with {@link #readCommitted}, which sees the last commit without opening a
+ * writer.
+ * </p>
+ * <p>
+ * Embeddings are indexed in an HNSW graph, so similarity lookups stay fast as the context grows. Inserts and deletes
+ * update the graph incrementally, segment merges clean up deleted nodes.
+ * </p>
+ */
+class PropositionPartition implements Closeable {
+    static final String FIELD_ID = "id";
+    static final String FIELD_CONTEXT = "contextId";
+    static final String FIELD_STATUS = "status";
+    static final String FIELD_MENTION = "mention";
+    static final String FIELD_MENTION_NAME = "mentionName";
+    static final String FIELD_GROUNDING = "grounding";
+    static final String FIELD_LEVEL = "level";
+    static final String FIELD_EMBEDDING = "embedding";
+    static final String FIELD_JSON = "json";
+
+    /**
+     * Hit in the partition, the score is the cosine similarity for vector searches and 1 for plain lookups.
+     */
+    record Hit(String json, double score) {
+    }
+
+    /**
+     * A stored proposition as JSON with its embedding, the embedding is {@code null} when it could not be read.
+     */
+    record Stored(String json, float[] embedding) {
+    }
+
+    private final String contextId;
+    private final int numCandidates;
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    PropositionPartition(String contextId, Path path, PropositionStoreProperties properties) throws IOException {
+        this.contextId = contextId;
+        this.numCandidates = properties.numCandidates();
+        this.directory = FSDirectory.open(path);
+        var config = new IndexWriterConfig(new StandardAnalyzer())
+                .setCodec(KnnVectorCodecs.hnsw(properties.maxConn(), properties.beamWidth()));
+        this.writer = new IndexWriter(directory, config);
+        this.searcherManager = new SearcherManager(writer, null);
+    }
+
+    String contextId() {
+        return contextId;
+    }
+
+    void upsert(StoredProposition proposition) throws IOException {
+        var document = new Document();
+        document.add(new StringField(FIELD_ID, proposition.id(), Field.Store.YES));
+        document.add(new StringField(FIELD_CONTEXT, contextId, Field.Store.NO));
+        document.add(new StringField(FIELD_STATUS, proposition.status(), Field.Store.NO));
+        for (String entityId : proposition.mentionedEntityIds()) {
+            document.add(new StringField(FIELD_MENTION, entityId, Field.Store.NO));
+        }
+        for (String name : proposition.mentionNames()) {
+            document.add(new StringField(FIELD_MENTION_NAME, name, Field.Store.NO));
+        }
+        for (String chunkId : proposition.grounding()) {
+            document.add(new StringField(FIELD_GROUNDING, chunkId, Field.Store.NO));
+        }
+        document.add(new IntPoint(FIELD_LEVEL, proposition.level()));
+        document.add(new KnnFloatVectorField(FIELD_EMBEDDING, proposition.embedding(), VectorSimilarityFunction.COSINE));
+        document.add(new StoredField(FIELD_JSON, proposition.json()));
+
+        writer.updateDocument(new Term(FIELD_ID, proposition.id()), document);
+        commit();
+    }
+
+    boolean delete(String id) throws IOException {
+        if (find(new TermQuery(new Term(FIELD_ID, id)), 1).isEmpty()) {
+            return false;
+        }
+        writer.deleteDocuments(new Term(FIELD_ID, id));
+        commit();
+        return true;
+    }
+
+    List<Hit> find(Query query, int maxHits) throws IOException {
+        return read(searcher -> searcher.find(query, maxHits));
+    }
+
+    List<Hit> findAll(Query query) throws IOException {
+        return read(searcher -> searcher.findAll(query));
+    }
+
+    List<Hit> nearest(float[] vector, int k, Query filter) throws IOException {
+        return read(searcher -> searcher.nearest(vector, k, filter));
+    }
+
+    int count() throws IOException {
+        return read(Searcher::count);
+    }
+
+    /**
+     * Runs the read with a searcher on the latest state of this partition.
+     */
+    <R> R read(Read<R> read) throws IOException {
+        var searcher = searcherManager.acquire();
+        try {
+            return read.apply(new Searcher(searcher, numCandidates));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Runs the read on the last commit of a partition that is not open, with a reader that is closed right after.
+     * Reading a context this way does not keep a writer and searcher open for it.
+     */
+    static <R> R readCommitted(Path path, PropositionStoreProperties properties, Read<R> read) throws IOException {
+        try (var directory = FSDirectory.open(path)) {
+            if (!DirectoryReader.indexExists(directory)) {
+                return read.apply(new Searcher(new IndexSearcher(new MultiReader()), properties.numCandidates()));
+            }
+            try (var reader = DirectoryReader.open(directory)) {
+                return read.apply(new Searcher(new IndexSearcher(reader), properties.numCandidates()));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Read<R> {
+        R apply(Searcher searcher) throws IOException;
+    }
+
+    /**
+     * The lookups on a point-in-time view of a partition.
+     */
+    static final class Searcher {
+        private final IndexSearcher searcher;
+        private final int numCandidates;
+
+        private Searcher(IndexSearcher searcher, int numCandidates) {
+            this.searcher = searcher;
+            this.numCandidates = numCandidates;
+        }
+
+        List<Hit> find(Query query, int maxHits) throws IOException {
+            return toHits(searcher.search(query, Math.max(1, maxHits)), false);
+        }
+
+        List<Hit> findAll(Query query) throws IOException {
+            var count = searcher.count(query);
+            if (count == 0) {
+                return List.of();
+            }
+            return toHits(searcher.search(query, count), false);
+        }
+
+        /**
+         * Approximate nearest neighbours of the vector. The graph is searched for at least {@code numCandidates}
+         * candidates, of which the best {@code k} are returned.
+         */
+        List<Hit> nearest(float[] vector, int k, Query filter) throws IOException {
+            var candidates = Math.max(Math.max(1, k), numCandidates);
+            var query = new KnnFloatVectorQuery(FIELD_EMBEDDING, vector, candidates, filter);
+            return toHits(searcher.search(query, Math.max(1, k)), true);
+        }
+
+        int count() {
+            return searcher.getIndexReader().numDocs();
+        }
+
+        /**
+         * The stored JSON and the embedding of a proposition, or {@code null} when the partition does not have it.
+         */
+        Stored stored(String id) throws IOException {
+            var topDocs = searcher.search(new TermQuery(new Term(FIELD_ID, id)), 1);
+            if (topDocs.scoreDocs.length == 0) {
+                return null;
+            }
+            var doc = topDocs.scoreDocs[0].doc;
+            var json = searcher.storedFields().document(doc).get(FIELD_JSON);
+            var leaves = searcher.getIndexReader().leaves();
+            var leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+            var vectors = leaf.reader().getFloatVectorValues(FIELD_EMBEDDING);
+            if (vectors == null) {
+                return new Stored(json, null);
+            }
+            var iterator = vectors.iterator();
+            var leafDoc = doc - leaf.docBase;
+            var embedding = iterator.advance(leafDoc) == leafDoc ? vectors.vectorValue(iterator.index()).clone() : null;
+            return new Stored(json, embedding);
+        }
+
+        private List<Hit> toHits(TopDocs topDocs, boolean vectorScores) throws IOException {
+            var storedFields = searcher.storedFields();
+            var hits = new ArrayList<Hit>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                var json = storedFields.document(scoreDoc.doc).get(FIELD_JSON);
+                // Lucene scales cosine similarity to (1 + cosine) / 2
+                var score = vectorScores ? 2.0 * scoreDoc.score - 1.0 : 1.0;
+                hits.add(new Hit(json, score));
+            }
+            return hits;
+        }
+    }
+
+    private void commit() throws IOException {
+        writer.commit();
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    @Override
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+}
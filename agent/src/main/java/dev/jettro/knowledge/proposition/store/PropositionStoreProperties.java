@@ -0,0 +1,27 @@
+package dev.jettro.knowledge.proposition.store;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Configuration for the Lucene backed proposition store.
+ * <p>
+ * Similarity lookups use an HNSW graph per context. {@code numCandidates} is the main recall/latency knob: it is the
+ * number of graph candidates collected before the top results are returned, raising it gives better recall for
+ * slightly slower lookups. {@code maxConn} and {@code beamWidth} determine the quality of the graph when it is built.
+ * </p>
+ *
+ * @param path          Directory that holds one Lucene index per context.
+ * @param maxConn       Maximum number of neighbours per node in the HNSW graph.
+ * @param beamWidth     Number of candidates considered when inserting a node in the HNSW graph.
+ * @param numCandidates Number of candidates collected from the graph for each similarity lookup.
+ */
+@ConfigurationProperties(prefix = "knowledge.propositions.store")
+public record PropositionStoreProperties(
+        @DefaultValue("./.proposition-index") Path path,
+        @DefaultValue("16") int maxConn,
+        @DefaultValue("100") int beamWidth,
+        @DefaultValue("100") int numCandidates) {
+}
@@ -0,0 +1,18 @@
+package dev.jettro.knowledge.proposition.store;
+
+import java.util.List;
+
+/**
+ * The parts of a proposition that are written to a {@link PropositionPartition}: the indexed values, the embedding
+ * of the text and the full proposition as JSON.
+ */
+record StoredProposition(
+        String id,
+        String status,
+        List<String> mentionedEntityIds,
+        List<String> mentionNames,
+        List<String> grounding,
+        int level,
+        float[] embedding,
+        String json) {
+}
@@ -0,0 +1,157 @@
+package dev.jettro.knowledge.search;
+
+import com.embabel.agent.rag.model.Retrievable;
+import com.embabel.agent.rag.service.TextSearch;
+import com.embabel.agent.rag.service.VectorSearch;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import dev.jettro.knowledge.ingest.SourcesIndexChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Caches the results of vector and text searches of another search implementation, so the repeated searches a model
+ * issues within a turn and across turns do not embed the query and search the index again.
+ * <p>
+ * Results are cached by the normalized query, the number of results, the similarity threshold and the requested
+ * type. The cache is bounded in size, least recently used results are dropped first, and results expire after the
+ * TTL. The cache is cleared when ingestion changes the sources. Hits and misses are counted in
+ * {@code knowledge.search.cache}.
+ * </p>
+ */
+public class CachingSearchOperations implements VectorSearch, TextSearch {
+    private static final Logger logger = LoggerFactory.getLogger(CachingSearchOperations.class);
+
+    private final VectorSearch vectorSearch;
+    private final TextSearch textSearch;
+    private final SearchCacheProperties properties;
+    private final Clock clock;
+    private final Map<Key, Entry> entries;
+    private final Counter hits;
+    private final Counter misses;
+
+    // Incremented on invalidation, results of searches that started before it are not cached
+    private long generation;
+
+    public <T extends VectorSearch & TextSearch> CachingSearchOperations(T delegate,
+                                                                        SearchCacheProperties properties,
+                                                                        MeterRegistry meterRegistry) {
+        this.vectorSearch = delegate;
+        this.textSearch = delegate;
+        this.properties = properties;
+        this.clock = Clock.systemUTC();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > properties.maxEntries();
+            }
+        };
+        this.hits = Counter.builder("knowledge.search.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("knowledge.search.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("knowledge.search.cache.size", this, CachingSearchOperations::size).register(meterRegistry);
+    }
+
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> vectorSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                         @NotNull Class<T> clazz) {
+        var key = new Key(Kind.VECTOR, normalize(request.getQuery()).toLowerCase(Locale.ROOT), request.getTopK(),
+                request.getSimilarityThreshold(), clazz);
+        return cached(key, () -> vectorSearch.vectorSearch(request, clazz));
+    }
+
+    /**
+     * Text queries are not lower-cased, Lucene operators like {@code AND} are case-sensitive.
+     */
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> textSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                       @NotNull Class<T> clazz) {
+        var key = new Key(Kind.TEXT, normalize(request.getQuery()), request.getTopK(),
+                request.getSimilarityThreshold(), clazz);
+        return cached(key, () -> textSearch.textSearch(request, clazz));
+    }
+
+    @NotNull
+    @Override
+    public String getLuceneSyntaxNotes() {
+        return textSearch.getLuceneSyntaxNotes();
+    }
+
+    @Override
+    public boolean supportsType(@NotNull String type) {
+        return vectorSearch.supportsType(type);
+    }
+
+    @EventListener
+    public void onSourcesIndexChanged(SourcesIndexChangedEvent event) {
+        invalidate();
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        if (!entries.isEmpty()) {
+            logger.info("Clearing {} cached search results", entries.size());
+        }
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Retrievable> List<SimilarityResult<T>> cached(Key key,
+                                                                    Supplier<List<SimilarityResult<T>>> search) {
+        if (!properties.enabled()) {
+            return search.get();
+        }
+
+        long startGeneration;
+        synchronized (this) {
+            var entry = entries.get(key);
+            if (entry != null && entry.expiresAt().isAfter(clock.instant())) {
+                hits.increment();
+                return (List<SimilarityResult<T>>) (List<?>) entry.results();
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+            startGeneration = generation;
+        }
+
+        misses.increment();
+        var results = List.copyOf(search.get());
+        synchronized (this) {
+            if (generation == startGeneration) {
+                entries.put(key, new Entry(results, clock.instant().plus(properties.ttl())));
+            }
+        }
+        return results;
+    }
+
+    private static String normalize(String query) {
+        return query.strip().replaceAll("\\s+", " ");
+    }
+
+    private enum Kind {VECTOR, TEXT}
+
+    private record Key(Kind kind, String query, int topK, double similarityThreshold, Class<?> type) {
+    }
+
+    private record Entry(List<? extends SimilarityResult<?>> results, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,166 @@
+package dev.jettro.knowledge.search;
+
+import com.embabel.agent.rag.model.Chunk;
+import com.embabel.agent.rag.model.Retrievable;
+import com.embabel.agent.rag.service.TextSearch;
+import com.embabel.agent.rag.service.VectorSearch;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.SimpleSimilaritySearchResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import org.apache.lucene.queryparser.classic.QueryParserBase;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Answers vector searches with a combination of a kNN vector query and a BM25 text query on the same index.
+ * <p>
+ * Both queries run in parallel for {@code candidates} results each. The results are fused with reciprocal-rank
+ * fusion, a result scores {@code 1 / (rrfK + rank)} for every list it is in, so documents that both queries find rank
+ * high even when their scores are not comparable. Fused scores are scaled so a result ranked first by both queries
+ * scores 1. When a {@link Reranker} is configured, the best {@code rerankTopN} fused results that are chunks get a
+ * blend of their fused score and the reranker score, weighted by {@code rerankWeight}, and all results are sorted by
+ * the blended score. Results without text keep their fused score.
+ * </p>
+ * <p>
+ * The scores of hybrid results are these fused or blended scores between 0 and 1, not cosine similarities. The
+ * similarity threshold of the request applies to the vector query only. Results of the text query match the terms of
+ * the query and have no cosine similarity, so they are not filtered by it.
+ * </p>
+ * <p>
+ * The query is escaped for the text query, it is natural language and not Lucene syntax. Text searches are passed to
+ * the delegate as they are. When the text query fails, the vector results are used on their own.
+ * </p>
+ */
+public class HybridSearchOperations implements VectorSearch, TextSearch {
+    private static final Logger logger = LoggerFactory.getLogger(HybridSearchOperations.class);
+    private static final Executor SEARCHERS =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hybrid-search-", 0).factory());
+
+    private final VectorSearch vectorSearch;
+    private final TextSearch textSearch;
+    private final HybridSearchProperties properties;
+    private final Reranker reranker;
+
+    /**
+     * @param reranker Reranker for the fused results, or {@code null} to keep the fused order.
+     */
+    public <T extends VectorSearch & TextSearch> HybridSearchOperations(T delegate,
+                                                                       HybridSearchProperties properties,
+                                                                       Reranker reranker) {
+        this.vectorSearch = delegate;
+        this.textSearch = delegate;
+        this.properties = properties;
+        this.reranker = properties.rerank() ? reranker : null;
+    }
+
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> vectorSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                         @NotNull Class<T> clazz) {
+        if (!properties.enabled() || request.getTopK() <= 0) {
+            return vectorSearch.vectorSearch(request, clazz);
+        }
+
+        int candidates = Math.max(request.getTopK(), properties.candidates());
+        var vectorRequest = new TextSimilaritySearchRequest(
+                request.getQuery(), request.getSimilarityThreshold(), candidates);
+        // BM25 scores are not similarities, the threshold of the request cannot apply to them
+        var textRequest = new TextSimilaritySearchRequest(
+                QueryParserBase.escape(request.getQuery()), 0.0, candidates);
+
+        var vectorHits = CompletableFuture.supplyAsync(() -> vectorSearch.vectorSearch(vectorRequest, clazz), SEARCHERS);
+        var textHits = CompletableFuture.supplyAsync(() -> textSearch.textSearch(textRequest, clazz), SEARCHERS)
+                .exceptionally(e -> {
+                    logger.warn("Text query for hybrid search failed, using the vector results only", e);
+                    return List.of();
+                });
+
+        var fused = fuse(List.of(vectorHits.join(), textHits.join()));
+        if (reranker != null) {
+            rerank(request.getQuery(), fused);
+        }
+
+        var results = new ArrayList<SimilarityResult<T>>(Math.min(fused.size(), request.getTopK()));
+        for (Fused<T> hit : fused.subList(0, Math.min(fused.size(), request.getTopK()))) {
+            results.add(new SimpleSimilaritySearchResult<>(hit.match(), hit.score()));
+        }
+        return results;
+    }
+
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> textSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                       @NotNull Class<T> clazz) {
+        return textSearch.textSearch(request, clazz);
+    }
+
+    @NotNull
+    @Override
+    public String getLuceneSyntaxNotes() {
+        return textSearch.getLuceneSyntaxNotes();
+    }
+
+    @Override
+    public boolean supportsType(@NotNull String type) {
+        return vectorSearch.supportsType(type);
+    }
+
+    private <T extends Retrievable> List<Fused<T>> fuse(List<List<SimilarityResult<T>>> rankings) {
+        var byId = new LinkedHashMap<String, Fused<T>>();
+        for (List<SimilarityResult<T>> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                var match = ranking.get(rank).getMatch();
+                double score = 1.0 / (properties.rrfK() + rank + 1);
+                byId.merge(match.getId(), new Fused<>(match, score),
+                        (existing, added) -> new Fused<>(existing.match(), existing.score() + added.score()));
+            }
+        }
+        // Scale so a result ranked first by both queries scores 1
+        double maxScore = 2.0 / (properties.rrfK() + 1);
+        var fused = new ArrayList<Fused<T>>(byId.size());
+        for (Fused<T> hit : byId.values()) {
+            fused.add(new Fused<>(hit.match(), Math.min(1.0, hit.score() / maxScore)));
+        }
+        fused.sort(Comparator.comparingDouble(Fused<T>::score).reversed());
+        return fused;
+    }
+
+    /**
+     * Blends the reranker score into the fused score of the chunks among the first {@code rerankTopN} results, and
+     * sorts the results again. Reranker scores are scaled so the best one in the batch is 1. Results without text keep
+     * their fused score.
+     */
+    private <T extends Retrievable> void rerank(String query, List<Fused<T>> fused) {
+        int n = Math.min(fused.size(), properties.rerankTopN());
+        var positions = new ArrayList<Integer>(n);
+        var texts = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) {
+            if (fused.get(i).match() instanceof Chunk chunk) {
+                positions.add(i);
+                texts.add(chunk.getText());
+            }
+        }
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        var scores = reranker.score(query, texts);
+        double maxScore = Arrays.stream(scores).max().orElse(0.0);
+        double weight = properties.rerankWeight();
+        for (int i = 0; i < positions.size(); i++) {
+            var hit = fused.get(positions.get(i));
+            double rerankScore = maxScore > 0.0 ? scores[i] / maxScore : 0.0;
+            fused.set(positions.get(i), new Fused<>(hit.match(), (1 - weight) * hit.score() + weight * rerankScore));
+        }
+        fused.sort(Comparator.comparingDouble(Fused<T>::score).reversed());
+    }
+
+    private record Fused<T>(T match, double score) {
+    }
+}
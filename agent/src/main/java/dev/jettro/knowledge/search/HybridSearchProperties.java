@@ -0,0 +1,25 @@
+package dev.jettro.knowledge.search;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of hybrid search over the sources.
+ *
+ * @param enabled      Whether vector searches also run a BM25 text query and fuse the results.
+ * @param candidates   Number of results taken from each of the two queries before fusing.
+ * @param rrfK         Rank constant of reciprocal-rank fusion, higher values flatten the difference between ranks.
+ * @param rerank       Whether the fused results are reranked.
+ * @param rerankTopN   Number of fused results that are reranked.
+ * @param rerankWeight Weight of the reranker score in the blended score of a reranked result, between 0 and 1. The
+ *                     fused score gets the rest, so at 0 reranking changes nothing and at 1 it decides the order.
+ */
+@ConfigurationProperties(prefix = "knowledge.search.hybrid")
+public record HybridSearchProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("20") int candidates,
+        @DefaultValue("60") int rrfK,
+        @DefaultValue("true") boolean rerank,
+        @DefaultValue("20") int rerankTopN,
+        @DefaultValue("0.3") double rerankWeight) {
+}
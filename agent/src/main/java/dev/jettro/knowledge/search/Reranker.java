@@ -0,0 +1,14 @@
+package dev.jettro.knowledge.search;
+
+import java.util.List;
+
+/**
+ * Scores how well texts answer a query, used to reorder search results after retrieval.
+ */
+public interface Reranker {
+
+    /**
+     * Relevance of each text to the query, in the order of the texts. Higher is better.
+     */
+    double[] score(String query, List<String> texts);
+}
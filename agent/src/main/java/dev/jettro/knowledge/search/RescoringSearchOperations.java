@@ -0,0 +1,131 @@
+package dev.jettro.knowledge.search;
+
+import com.embabel.agent.rag.model.Retrievable;
+import com.embabel.agent.rag.service.TextSearch;
+import com.embabel.agent.rag.service.VectorSearch;
+import com.embabel.common.ai.model.EmbeddingService;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.SimpleSimilaritySearchResult;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import dev.jettro.knowledge.lucene.SourcesIndexProperties;
+import dev.jettro.knowledge.lucene.SourcesIndexSearcher;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rescores vector search results from a quantized index with the full precision vectors.
+ * <p>
+ * The graph of a quantized index is searched with approximate vectors, so the order of the hits is approximate too.
+ * This retrieves {@code rescoreOversample} times the requested number of hits, reads the full precision vector of
+ * each hit from the index, and returns the best ones by exact cosine similarity, in Lucene's score scale. The vectors
+ * are read through the {@link SourcesIndexSearcher}. Hits whose vector cannot be found keep the score of the
+ * delegate. The similarity threshold of the request is applied to the rescored scores, the candidates are retrieved
+ * without it because their approximate scores can be on either side of it.
+ * </p>
+ */
+public class RescoringSearchOperations implements VectorSearch, TextSearch {
+    private static final Logger logger = LoggerFactory.getLogger(RescoringSearchOperations.class);
+
+    private final VectorSearch vectorSearch;
+    private final TextSearch textSearch;
+    private final SourcesIndexProperties properties;
+    private final EmbeddingService embeddingService;
+    private final SourcesIndexSearcher indexSearcher;
+
+    public <T extends VectorSearch & TextSearch> RescoringSearchOperations(T delegate,
+                                                                          SourcesIndexProperties properties,
+                                                                          SourcesIndexSearcher indexSearcher,
+                                                                          EmbeddingService embeddingService) {
+        this.vectorSearch = delegate;
+        this.textSearch = delegate;
+        this.properties = properties;
+        this.indexSearcher = indexSearcher;
+        this.embeddingService = embeddingService;
+    }
+
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> vectorSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                         @NotNull Class<T> clazz) {
+        var oversampled = new TextSimilaritySearchRequest(request.getQuery(), 0.0,
+                request.getTopK() * Math.max(1, properties.rescoreOversample()));
+        var candidates = vectorSearch.vectorSearch(oversampled, clazz);
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+
+        var query = embeddingService.embed(request.getQuery());
+        List<SimilarityResult<T>> rescored;
+        try {
+            rescored = indexSearcher.search(searcher -> {
+                var results = new ArrayList<SimilarityResult<T>>(candidates.size());
+                for (SimilarityResult<T> candidate : candidates) {
+                    var vector = fullPrecisionVector(searcher, candidate.getMatch().getId());
+                    double score = vector == null || vector.length != query.length
+                            ? candidate.getScore()
+                            : VectorSimilarityFunction.COSINE.compare(query, vector);
+                    results.add(new SimpleSimilaritySearchResult<>(candidate.getMatch(), score));
+                }
+                return results;
+            });
+        } catch (IOException e) {
+            logger.warn("Could not read full precision vectors, using the approximate scores", e);
+            rescored = null;
+        }
+        if (rescored == null) {
+            rescored = new ArrayList<>(candidates);
+        }
+
+        rescored.removeIf(result -> result.getScore() < request.getSimilarityThreshold());
+        rescored.sort(Comparator.comparingDouble(SimilarityResult<T>::getScore).reversed());
+        return List.copyOf(rescored.subList(0, Math.min(rescored.size(), request.getTopK())));
+    }
+
+    @NotNull
+    @Override
+    public <T extends Retrievable> List<SimilarityResult<T>> textSearch(@NotNull TextSimilaritySearchRequest request,
+                                                                       @NotNull Class<T> clazz) {
+        return textSearch.textSearch(request, clazz);
+    }
+
+    @NotNull
+    @Override
+    public String getLuceneSyntaxNotes() {
+        return textSearch.getLuceneSyntaxNotes();
+    }
+
+    @Override
+    public boolean supportsType(@NotNull String type) {
+        return vectorSearch.supportsType(type);
+    }
+
+    private float[] fullPrecisionVector(IndexSearcher searcher, String id) throws IOException {
+        var topDocs = searcher.search(new TermQuery(new Term(properties.idField(), id)), 1);
+        if (topDocs.scoreDocs.length == 0) {
+            return null;
+        }
+        int doc = topDocs.scoreDocs[0].doc;
+        var leaves = searcher.getIndexReader().leaves();
+        var leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+        var values = leaf.reader().getFloatVectorValues(properties.embeddingField());
+        if (values == null) {
+            return null;
+        }
+        var iterator = values.iterator();
+        if (iterator.advance(doc - leaf.docBase) != doc - leaf.docBase) {
+            return null;
+        }
+        return values.vectorValue(iterator.index());
+    }
+}
@@ -0,0 +1,20 @@
+package dev.jettro.knowledge.search;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the cache for search results over the sources.
+ *
+ * @param enabled    Whether search results are cached.
+ * @param maxEntries Maximum number of cached results, the least recently used ones are dropped.
+ * @param ttl        Time a cached result stays valid. Ingestion clears the cache, the TTL is a safety net.
+ */
+@ConfigurationProperties(prefix = "knowledge.search.cache")
+public record SearchCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("1000") int maxEntries,
+        @DefaultValue("10m") Duration ttl) {
+}
@@ -0,0 +1,85 @@
+package dev.jettro.knowledge.search;
+
+import java.util.*;
+
+/**
+ * {@link Reranker} that looks at the query terms in the text: how many of them occur, and how many adjacent pairs of
+ * query terms occur close together. Runs on the CPU in microseconds, without a model.
+ */
+public class TermProximityReranker implements Reranker {
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "did", "do", "does", "for", "from", "give", "has", "have",
+            "how", "in", "is", "it", "of", "on", "or", "the", "to", "was", "what", "when", "where", "which", "who",
+            "why", "with");
+    private static final int PROXIMITY_WINDOW = 8;
+    private static final double PROXIMITY_WEIGHT = 0.4;
+
+    @Override
+    public double[] score(String query, List<String> texts) {
+        var queryTerms = terms(query).stream().filter(term -> !STOP_WORDS.contains(term)).distinct().toList();
+        var scores = new double[texts.size()];
+        if (queryTerms.isEmpty()) {
+            return scores;
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            scores[i] = score(queryTerms, terms(texts.get(i)));
+        }
+        return scores;
+    }
+
+    private static double score(List<String> queryTerms, List<String> textTerms) {
+        var positions = new HashMap<String, List<Integer>>();
+        for (int position = 0; position < textTerms.size(); position++) {
+            positions.computeIfAbsent(textTerms.get(position), term -> new ArrayList<>()).add(position);
+        }
+
+        long covered = queryTerms.stream().filter(positions::containsKey).count();
+        double coverage = (double) covered / queryTerms.size();
+        if (queryTerms.size() < 2) {
+            return coverage;
+        }
+
+        int closePairs = 0;
+        for (int i = 1; i < queryTerms.size(); i++) {
+            if (near(positions.get(queryTerms.get(i - 1)), positions.get(queryTerms.get(i)))) {
+                closePairs++;
+            }
+        }
+        double proximity = (double) closePairs / (queryTerms.size() - 1);
+        return (1 - PROXIMITY_WEIGHT) * coverage + PROXIMITY_WEIGHT * proximity;
+    }
+
+    private static boolean near(List<Integer> first, List<Integer> second) {
+        if (first == null || second == null) {
+            return false;
+        }
+        // Both lists are sorted, walk them together
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            int distance = first.get(i) - second.get(j);
+            if (Math.abs(distance) <= PROXIMITY_WINDOW) {
+                return true;
+            }
+            if (distance < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> terms(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        var terms = new ArrayList<String>();
+        for (String term : text.toLowerCase(Locale.ROOT).split("\\W+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+}
@@ -11,7 +11,6 @@ public class KnowledgeUser implements User, NamedEntity {
     private final String displayName;
     private final String username;
     private String email;
-    private String processId;
 
     public KnowledgeUser(String id, String displayName, String username) {
         this.id = id;
@@ -43,20 +42,11 @@ public class KnowledgeUser implements User, NamedEntity {
         return this.email;
     }
 
-    @Nullable
-    public String getProcessId() {
-        return this.processId;
-    }
-
     @NotNull
     public String getCurrentContext() {
         return "%s_default_context".formatted(this.getId());
     }
 
-    public void setProcessId(String processId) {
-        this.processId = processId;
-    }
-
     // TODO check if this is correct in the example user
     @Override
     public @NotNull String getName() {
@@ -43,7 +43,10 @@ public class SecurityConfiguration {
                                 "/**/*.woff2",
                                 "/**/*.ttf",
                                 "/**/*.eot",
-                                "/api/v1/**"
+                                "/api/v1/**",
+                                // Health and probes for the platform, without details, other actuator endpoints
+                                // stay authenticated
+                                "/actuator/health/**"
                         ).permitAll()
                         // Secure all API endpoints
                         .anyRequest().authenticated()
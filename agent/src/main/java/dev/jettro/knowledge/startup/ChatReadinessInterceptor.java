@@ -0,0 +1,32 @@
+package dev.jettro.knowledge.startup;
+
+import dev.jettro.knowledge.lucene.SourcesIndex;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Refuses chat requests with {@code 503 Service Unavailable} and a {@code Retry-After} header while the sources
+ * index is still being opened, instead of letting them wait for it.
+ */
+class ChatReadinessInterceptor implements HandlerInterceptor {
+    private final SourcesIndex sourcesIndex;
+    private final StartupProperties properties;
+
+    ChatReadinessInterceptor(SourcesIndex sourcesIndex, StartupProperties properties) {
+        this.sourcesIndex = sourcesIndex;
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (sourcesIndex.isOpen()) {
+            return true;
+        }
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(properties.retryAfter().toSeconds()));
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package dev.jettro.knowledge.startup;
+
+import com.embabel.agent.rag.model.Chunk;
+import com.embabel.common.core.types.TextSimilaritySearchRequest;
+import dev.jettro.knowledge.lucene.SourcesIndex;
+import dev.jettro.knowledge.lucene.SourcesIndexSearcher;
+import dev.jettro.knowledge.search.CachingSearchOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Warms up the query path in the background once the application is started: waits for the sources index, opens
+ * the memory mapped reader and runs the configured warm-up queries through the search of the sources, so the first
+ * user does not pay for loading the index from disk.
+ */
+@Component
+public class SearchWarmUp {
+    private static final Logger logger = LoggerFactory.getLogger(SearchWarmUp.class);
+
+    private final SourcesIndex sourcesIndex;
+    private final SourcesIndexSearcher indexSearcher;
+    private final CachingSearchOperations searchOperations;
+    private final StartupProperties properties;
+
+    public SearchWarmUp(SourcesIndex sourcesIndex,
+                        SourcesIndexSearcher indexSearcher,
+                        @Qualifier("sourcesSearchOperations") CachingSearchOperations searchOperations,
+                        StartupProperties properties) {
+        this.sourcesIndex = sourcesIndex;
+        this.indexSearcher = indexSearcher;
+        this.searchOperations = searchOperations;
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        sourcesIndex.whenOpen().thenRunAsync(this::runWarmUp,
+                runnable -> Thread.ofVirtual().name("search-warm-up").start(runnable));
+    }
+
+    private void runWarmUp() {
+        long start = System.nanoTime();
+        try {
+            var documents = indexSearcher.search(searcher -> searcher.getIndexReader().numDocs());
+            logger.debug("Opened reader of the sources index with {} documents", documents);
+            for (String query : properties.warmUpQueries()) {
+                var request = new TextSimilaritySearchRequest(query, 0.0, properties.warmUpTopK());
+                searchOperations.vectorSearch(request, Chunk.class);
+                searchOperations.textSearch(request, Chunk.class);
+            }
+            logger.info("Warmed up the search of the sources with {} queries in {} ms",
+                    properties.warmUpQueries().size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Warming up the search of the sources failed", e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package dev.jettro.knowledge.startup;
+
+import dev.jettro.knowledge.lucene.SourcesIndex;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the sources index as down while it is being opened, it is part of the readiness group so a load balancer
+ * only sends traffic once the index is open.
+ */
+@Component
+public class SourcesIndexHealthIndicator implements HealthIndicator {
+    private final SourcesIndex sourcesIndex;
+
+    public SourcesIndexHealthIndicator(SourcesIndex sourcesIndex) {
+        this.sourcesIndex = sourcesIndex;
+    }
+
+    @Override
+    public Health health() {
+        if (sourcesIndex.isOpen()) {
+            return Health.up().build();
+        }
+        var opened = sourcesIndex.whenOpen();
+        if (opened.isCompletedExceptionally()) {
+            return Health.down(opened.exceptionNow()).build();
+        }
+        return Health.outOfService().withDetail("state", "opening").build();
+    }
+}
@@ -0,0 +1,25 @@
+package dev.jettro.knowledge.startup;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration for starting the application without waiting for the sources index.
+ *
+ * @param lazyIndex      Open the sources index in the background, chat requests are refused until it is open.
+ *                       When {@code false}, startup waits for the index.
+ * @param retryAfter     Value of the {@code Retry-After} header of chat requests that are refused while starting.
+ * @param warmUpQueries  Queries sent through the search of the sources once the index is open, to load the parts of
+ *                       the index they touch before the first user does.
+ * @param warmUpTopK     Number of results requested by each warm-up query.
+ */
+@ConfigurationProperties(prefix = "knowledge.startup")
+public record StartupProperties(
+        @DefaultValue("true") boolean lazyIndex,
+        @DefaultValue("5s") Duration retryAfter,
+        @DefaultValue List<String> warmUpQueries,
+        @DefaultValue("5") int warmUpTopK) {
+}
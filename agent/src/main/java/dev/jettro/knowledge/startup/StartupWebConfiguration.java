@@ -0,0 +1,26 @@
+package dev.jettro.knowledge.startup;
+
+import dev.jettro.knowledge.lucene.SourcesIndex;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Puts the chat endpoints behind the readiness of the sources index.
+ */
+@Configuration
+public class StartupWebConfiguration implements WebMvcConfigurer {
+    private final SourcesIndex sourcesIndex;
+    private final StartupProperties properties;
+
+    public StartupWebConfiguration(SourcesIndex sourcesIndex, StartupProperties properties) {
+        this.sourcesIndex = sourcesIndex;
+        this.properties = properties;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ChatReadinessInterceptor(sourcesIndex, properties))
+                .addPathPatterns("/chat/*");
+    }
+}
@@ -0,0 +1,278 @@
+package dev.jettro.knowledge.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps vectors of a fixed dimension packed in contiguous {@code float[]} slabs, addressed by int handles.
+ * <p>
+ * Vectors are normalized when they are stored, so the dot product with a normalized query is the cosine similarity.
+ * Searching walks the slabs with a {@link VectorScorer} and keeps the best hits in the caller's {@link TopK}, so a
+ * search does not box scores or allocate per vector. Handles of removed vectors are reused by later additions.
+ * </p>
+ * <p>
+ * Reads run concurrently, writes take an exclusive lock.
+ * </p>
+ */
+public class PackedVectorStore {
+    private static final int VECTORS_PER_SLAB = 1024;
+
+    private final int dimensions;
+    private final VectorScorer scorer;
+    private final List<float[]> slabs = new ArrayList<>();
+    private final BitSet live = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int[] freeHandles = new int[16];
+    private int freeCount;
+    private int nextHandle;
+    private int size;
+
+    public PackedVectorStore(int dimensions) {
+        this(dimensions, VectorScorer.best());
+    }
+
+    public PackedVectorStore(int dimensions, VectorScorer scorer) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("Dimensions must be positive, got " + dimensions);
+        }
+        this.dimensions = dimensions;
+        this.scorer = scorer;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Stores a copy of the vector and returns its handle.
+     */
+    public int add(float[] vector) {
+        checkDimensions(vector);
+        lock.writeLock().lock();
+        try {
+            int handle = freeCount > 0 ? freeHandles[--freeCount] : nextHandle++;
+            write(handle, vector);
+            live.set(handle);
+            size++;
+            return handle;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the vector stored under the handle.
+     */
+    public void set(int handle, float[] vector) {
+        checkDimensions(vector);
+        lock.writeLock().lock();
+        try {
+            checkLive(handle);
+            write(handle, vector);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the handle, it can be handed out again by {@link #add(float[])}.
+     */
+    public void remove(int handle) {
+        lock.writeLock().lock();
+        try {
+            checkLive(handle);
+            live.clear(handle);
+            size--;
+            if (freeCount == freeHandles.length) {
+                freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+            }
+            freeHandles[freeCount++] = handle;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the normalized vector stored under the handle into {@code target}.
+     */
+    public void copyTo(int handle, float[] target) {
+        lock.readLock().lock();
+        try {
+            checkLive(handle);
+            System.arraycopy(slabs.get(handle / VECTORS_PER_SLAB), offset(handle), target, 0, dimensions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores all live vectors accepted by the filter against the query and keeps the best ones in {@code topK}. The
+     * query does not have to be normalized. A {@code null} filter accepts every vector.
+     */
+    public void search(float[] query, IntPredicate filter, TopK topK) {
+        checkDimensions(query);
+        topK.clear();
+        float queryNorm = (float) Math.sqrt(scorer.dotProduct(query, 0, query, 0, dimensions));
+        if (queryNorm == 0f) {
+            return;
+        }
+
+        lock.readLock().lock();
+        try {
+            for (int handle = live.nextSetBit(0); handle >= 0; handle = live.nextSetBit(handle + 1)) {
+                if (filter != null && !filter.test(handle)) {
+                    continue;
+                }
+                float score = scorer.dotProduct(
+                        query, 0, slabs.get(handle / VECTORS_PER_SLAB), offset(handle), dimensions) / queryNorm;
+                topK.offer(handle, score);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        topK.sort();
+    }
+
+    private void write(int handle, float[] vector) {
+        int slab = handle / VECTORS_PER_SLAB;
+        while (slabs.size() <= slab) {
+            slabs.add(new float[VECTORS_PER_SLAB * dimensions]);
+        }
+        float norm = (float) Math.sqrt(scorer.dotProduct(vector, 0, vector, 0, dimensions));
+        float scale = norm == 0f ? 0f : 1f / norm;
+        var target = slabs.get(slab);
+        int offset = offset(handle);
+        for (int i = 0; i < dimensions; i++) {
+            target[offset + i] = vector[i] * scale;
+        }
+    }
+
+    private int offset(int handle) {
+        return (handle % VECTORS_PER_SLAB) * dimensions;
+    }
+
+    private void checkDimensions(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Expected a vector with " + dimensions + " dimensions, got " + vector.length);
+        }
+    }
+
+    private void checkLive(int handle) {
+        if (handle < 0 || !live.get(handle)) {
+            throw new IllegalArgumentException("No vector stored under handle " + handle);
+        }
+    }
+
+    /**
+     * Reusable result buffer for {@link #search(float[], IntPredicate, TopK)}, a bounded min-heap on primitive
+     * arrays. After a search the hits are ordered from the highest to the lowest score. Not thread safe, keep one per
+     * thread.
+     */
+    public static final class TopK {
+        private final int[] handles;
+        private final float[] scores;
+        private int count;
+
+        public TopK(int capacity) {
+            this.handles = new int[capacity];
+            this.scores = new float[capacity];
+        }
+
+        public int capacity() {
+            return handles.length;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public int handle(int index) {
+            return handles[index];
+        }
+
+        public float score(int index) {
+            return scores[index];
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        void offer(int handle, float score) {
+            if (count < handles.length) {
+                handles[count] = handle;
+                scores[count] = score;
+                siftUp(count++);
+            } else if (count > 0 && score > scores[0]) {
+                handles[0] = handle;
+                scores[0] = score;
+                siftDown(0, count);
+            }
+        }
+
+        /**
+         * Heap sort in place, the min-heap leaves the highest score in front.
+         */
+        void sort() {
+            for (int end = count - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (scores[parent] <= scores[index]) {
+                    return;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index, int length) {
+            while (true) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < length && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (right < length && scores[right] < scores[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int handle = handles[a];
+            handles[a] = handles[b];
+            handles[b] = handle;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dev.jettro.knowledge.vector;
+
+/**
+ * Plain Java dot product, unrolled so the JIT can keep several partial sums in registers.
+ */
+class ScalarVectorScorer implements VectorScorer {
+
+    @Override
+    public float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (int upper = length & ~3; i < upper; i += 4) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+            sum1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            sum2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            sum3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum0 + sum1 + sum2 + sum3;
+    }
+}
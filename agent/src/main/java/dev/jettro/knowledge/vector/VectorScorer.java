@@ -0,0 +1,16 @@
+package dev.jettro.knowledge.vector;
+
+/**
+ * Computes dot products between vectors stored in float arrays, starting at the given offsets.
+ */
+public interface VectorScorer {
+
+    float dotProduct(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * Returns the default scorer, the unrolled scalar loop.
+     */
+    static VectorScorer best() {
+        return new ScalarVectorScorer();
+    }
+}
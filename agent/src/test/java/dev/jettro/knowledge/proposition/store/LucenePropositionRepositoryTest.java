@@ -0,0 +1,125 @@
+package dev.jettro.knowledge.proposition.store;
+
+import com.embabel.common.ai.model.EmbeddingService;
+import com.embabel.dice.proposition.Proposition;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.LockObtainFailedException;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class LucenePropositionRepositoryTest {
+    private static final String PROPOSITION = """
+            {
+              "id": "%s",
+              "contextId": "%s",
+              "text": "%s",
+              "mentions": [{"name": "Jettro", "type": "Person", "resolvedId": "person-1"}],
+              "confidence": 0.9,
+              "grounding": ["chunk-1"],
+              "status": "ACTIVE",
+              "level": 0
+            }
+            """;
+
+    @TempDir
+    Path root;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final EmbeddingService embeddingService = mock(EmbeddingService.class);
+    private LucenePropositionRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        when(embeddingService.embed(anyString())).thenReturn(new float[]{0.1f, 0.2f, 0.3f});
+        repository = new LucenePropositionRepository(
+                new PropositionStoreProperties(root, 16, 100, 50), embeddingService, objectMapper);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        repository.close();
+    }
+
+    @Test
+    void propositionSurvivesTheRoundTripThroughTheStoredJson() throws Exception {
+        var proposition = proposition("Jettro works on the knowledge agent");
+
+        repository.save(proposition);
+        repository.close();
+        repository = new LucenePropositionRepository(
+                new PropositionStoreProperties(root, 16, 100, 50), embeddingService, objectMapper);
+
+        var restored = repository.findById(proposition.getId());
+        assertNotNull(restored);
+        assertEquals(proposition, restored);
+        assertEquals(proposition.getText(), restored.getText());
+        assertEquals(proposition.getContextIdValue(), restored.getContextIdValue());
+        assertEquals(proposition.getGrounding(), restored.getGrounding());
+        assertEquals(proposition.getMentions().getFirst().getResolvedId(),
+                restored.getMentions().getFirst().getResolvedId());
+    }
+
+    @Test
+    void savingUnchangedTextKeepsTheStoredEmbedding() throws Exception {
+        repository.save(proposition("Jettro works on the knowledge agent"));
+        repository.save(proposition("Jettro works on the knowledge agent"));
+        verify(embeddingService, times(1)).embed(anyString());
+
+        repository.save(proposition("Jettro maintains the knowledge agent"));
+        verify(embeddingService, times(2)).embed(anyString());
+    }
+
+    @Test
+    void readsAcrossContextsWithoutOpeningThem() throws Exception {
+        repository.save(proposition("proposition-1", "context-1", "Jettro works on the knowledge agent"));
+        repository.save(proposition("proposition-2", "context-2", "Jettro maintains the knowledge agent"));
+        repository.close();
+        repository = new LucenePropositionRepository(
+                new PropositionStoreProperties(root, 16, 100, 50), embeddingService, objectMapper);
+
+        assertEquals(2, repository.count());
+        assertEquals(2, repository.findAll().size());
+        assertEquals("proposition-2", repository.findById("proposition-2").getId());
+        assertFalse(isWriterOpen("context-1"));
+        assertFalse(isWriterOpen("context-2"));
+
+        assertTrue(repository.delete("proposition-1"));
+        assertEquals(1, repository.count());
+        assertTrue(isWriterOpen("context-1"));
+        assertFalse(isWriterOpen("context-2"));
+    }
+
+    private Proposition proposition(String text) throws Exception {
+        return proposition("proposition-1", "context-1", text);
+    }
+
+    private Proposition proposition(String id, String contextId, String text) throws Exception {
+        return objectMapper.readValue(PROPOSITION.formatted(id, contextId, text), Proposition.class);
+    }
+
+    /**
+     * A partition that was opened holds the write lock of its directory until the repository is closed.
+     */
+    private boolean isWriterOpen(String contextId) throws IOException {
+        var path = root.resolve(URLEncoder.encode(contextId, StandardCharsets.UTF_8));
+        try (var directory = FSDirectory.open(path); var lock = directory.obtainLock(IndexWriter.WRITE_LOCK_NAME)) {
+            return false;
+        } catch (LockObtainFailedException e) {
+            return true;
+        }
+    }
+}
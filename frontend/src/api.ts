@@ -2,6 +2,8 @@ export interface ChatMessage {
   role: 'user' | 'assistant';
   content: string;
   timestamp: Date;
+  // Set while the assistant message is still being streamed
+  streamId?: string;
 }
 
 export interface InitSessionRequest {
@@ -38,8 +40,19 @@ function getAuthHeaders(): HeadersInit {
   return headers;
 }
 
+// The chat endpoints answer 503 while the backend is still opening its index, retry after the advertised delay
+async function fetchWhenReady(input: string, init: RequestInit, attempts = 12): Promise<Response> {
+  const response = await fetch(input, init);
+  if (response.status !== 503 || attempts <= 1) {
+    return response;
+  }
+  const retryAfter = Number(response.headers.get('Retry-After')) || 5;
+  await new Promise((resolve) => setTimeout(resolve, retryAfter * 1000));
+  return fetchWhenReady(input, init, attempts - 1);
+}
+
 export async function initializeSession(): Promise<InitSessionResponse> {
-  const response = await fetch('/chat/init', {
+  const response = await fetchWhenReady('/chat/init', {
     method: 'GET',
     headers: getAuthHeaders(),
   });
@@ -52,7 +65,7 @@ export async function initializeSession(): Promise<InitSessionResponse> {
 }
 
 export async function sendChatMessage(message: string): Promise<ChatResponse> {
-  const response = await fetch('/chat/message', {
+  const response = await fetchWhenReady('/chat/message', {
     method: 'POST',
     headers: getAuthHeaders(),
     body: JSON.stringify({ message }),
@@ -65,6 +78,33 @@ export async function sendChatMessage(message: string): Promise<ChatResponse> {
   return await response.json();
 }
 
+export interface IngestionJob {
+  jobId: string;
+  state: 'QUEUED' | 'RUNNING' | 'COMPLETED' | 'FAILED';
+  totalFiles: number;
+  parsedFiles: number;
+  ingestedFiles: number;
+  skippedFiles: number;
+  failedFiles: number;
+  deletedFiles: number;
+  startedAt?: string;
+  finishedAt?: string;
+  errors: string[];
+}
+
+async function getIngestionJob(jobId: string): Promise<IngestionJob> {
+  const response = await fetch(`/ingest/${jobId}`, {
+    method: 'GET',
+    headers: getAuthHeaders(),
+  });
+
+  if (!response.ok) {
+    throw new Error(`Failed to fetch ingestion job: ${response.statusText}`);
+  }
+
+  return await response.json();
+}
+
 export async function reindexData(): Promise<string> {
   const response = await fetch('/ingest', {
     method: 'POST',
@@ -75,7 +115,17 @@ export async function reindexData(): Promise<string> {
     throw new Error(`Failed to reindex data: ${response.statusText}`);
   }
 
-  return await response.text();
+  let job: IngestionJob = await response.json();
+  while (job.state === 'QUEUED' || job.state === 'RUNNING') {
+    await new Promise((resolve) => setTimeout(resolve, 1000));
+    job = await getIngestionJob(job.jobId);
+  }
+
+  if (job.state === 'FAILED') {
+    throw new Error(`Reindex failed: ${job.errors.join(', ')}`);
+  }
+
+  return `Successfully ingested ${job.ingestedFiles} files (${job.skippedFiles} unchanged, ${job.deletedFiles} removed, ${job.failedFiles} failed)`;
 }
 
 export async function logout(): Promise<void> {
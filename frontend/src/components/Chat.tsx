@@ -28,7 +28,7 @@ export function Chat({ onConversationIdChange }: ChatProps) {
   const [conversationId, setConversationId] = useState<string | null>(null);
   const [isInitializing, setIsInitializing] = useState(false);
   const messagesEndRef = useRef<HTMLDivElement>(null);
-  const { isConnected, error: sseError, onMessage } = useChatSSE(conversationId);
+  const { isConnected, error: sseError, onMessage, onDelta } = useChatSSE(conversationId);
 
   const scrollToBottom = () => {
     messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
@@ -45,7 +45,7 @@ export function Chat({ onConversationIdChange }: ChatProps) {
     }
   }, [username]);
 
-  // Set up SSE message handler
+  // Set up SSE message handler, the full message replaces the streamed one
   useEffect(() => {
     onMessage((content: string) => {
       const assistantMessage: ChatMessageType = {
@@ -53,11 +53,31 @@ export function Chat({ onConversationIdChange }: ChatProps) {
         content,
         timestamp: new Date(),
       };
-      setMessages((prev) => [...prev, assistantMessage]);
+      setMessages((prev) => {
+        const last = prev[prev.length - 1];
+        if (last?.streamId) {
+          return [...prev.slice(0, -1), assistantMessage];
+        }
+        return [...prev, assistantMessage];
+      });
       setIsLoading(false);
     });
   }, [onMessage]);
 
+  // Append streamed frames to the assistant message that is being generated
+  useEffect(() => {
+    onDelta((streamId: string, delta: string) => {
+      setMessages((prev) => {
+        const last = prev[prev.length - 1];
+        if (last?.streamId === streamId) {
+          return [...prev.slice(0, -1), { ...last, content: last.content + delta }];
+        }
+        return [...prev, { role: 'assistant', content: delta, timestamp: new Date(), streamId }];
+      });
+      setIsLoading(false);
+    });
+  }, [onDelta]);
+
   const handleInitializeSession = async () => {
     setIsInitializing(true);
     try {
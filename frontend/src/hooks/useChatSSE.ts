@@ -1,11 +1,12 @@
 import { useEffect, useState, useRef, useCallback } from 'react';
-import type { MessageOutputChannelEvent } from '../types/chatEvents';
+import type { AssistantDeltaOutputChannelEvent, MessageOutputChannelEvent } from '../types/chatEvents';
 
 export function useChatSSE(conversationId: string | null) {
   const [isConnected, setIsConnected] = useState(false);
   const [error, setError] = useState<string | null>(null);
   const eventSourceRef = useRef<EventSource | null>(null);
   const onMessageCallbackRef = useRef<((content: string) => void) | null>(null);
+  const onDeltaCallbackRef = useRef<((streamId: string, delta: string) => void) | null>(null);
 
   useEffect(() => {
     if (!conversationId) {
@@ -46,6 +47,18 @@ export function useChatSSE(conversationId: string | null) {
       }
     });
 
+    // Frames of an assistant response that is still being generated
+    eventSource.addEventListener('AssistantDeltaOutputChannelEvent', (e) => {
+      try {
+        const event: AssistantDeltaOutputChannelEvent = JSON.parse(e.data);
+        if (onDeltaCallbackRef.current && event.delta) {
+          onDeltaCallbackRef.current(event.streamId, event.delta);
+        }
+      } catch (err) {
+        console.error('Failed to parse AssistantDeltaOutputChannelEvent:', err);
+      }
+    });
+
     eventSource.addEventListener('ContentOutputChannelEvent', (e) => {
       try {
         const event = JSON.parse(e.data);
@@ -93,5 +106,9 @@ export function useChatSSE(conversationId: string | null) {
     onMessageCallbackRef.current = callback;
   }, []);
 
-  return { isConnected, error, onMessage };
+  const onDelta = useCallback((callback: (streamId: string, delta: string) => void) => {
+    onDeltaCallbackRef.current = callback;
+  }, []);
+
+  return { isConnected, error, onMessage, onDelta };
 }
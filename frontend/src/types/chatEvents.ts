@@ -22,8 +22,15 @@ export interface LoggingOutputChannelEvent extends OutputChannelEvent {
   message: string;
 }
 
+export interface AssistantDeltaOutputChannelEvent extends OutputChannelEvent {
+  streamId: string;
+  sequence: number;
+  delta: string;
+}
+
 export type ChatEvent = 
   | MessageOutputChannelEvent 
   | ContentOutputChannelEvent 
   | ProgressOutputChannelEvent 
-  | LoggingOutputChannelEvent;
+  | LoggingOutputChannelEvent
+  | AssistantDeltaOutputChannelEvent;
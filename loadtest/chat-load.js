@@ -0,0 +1,87 @@
+// Load test for the chat endpoints, run with k6: https://k6.io
+//
+//   k6 run loadtest/chat-load.js
+//   k6 run -e VUS=2000 -e DURATION=2m loadtest/chat-load.js
+//
+// Run it once before and once after a change, with LABEL set to tell the runs apart:
+//
+//   k6 run -e LABEL=before loadtest/chat-load.js
+//   k6 run -e LABEL=after loadtest/chat-load.js
+//
+// Each run writes its summary to loadtest/results/<LABEL>.json and prints one line with the request rate, the
+// http_req_duration percentiles and the failure rate. Add the lines to loadtest/results/README.md together with the
+// number of live threads (jvm.threads.live on /actuator/metrics) at the end of the run.
+// Point BASE_URL at an instance with a stubbed or local model to measure the server and not the LLM provider.
+import http from 'k6/http';
+import encoding from 'k6/encoding';
+import { check, sleep } from 'k6';
+import { textSummary } from 'https://jslib.k6.io/k6-summary/0.1.0/index.js';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const USERS = ['jettro', 'ian', 'roy', 'marijn'];
+const LABEL = __ENV.LABEL || 'run';
+
+export const options = {
+  scenarios: {
+    chat: {
+      executor: 'ramping-vus',
+      startVUs: 0,
+      stages: [
+        { duration: '30s', target: Number(__ENV.VUS || 500) },
+        { duration: __ENV.DURATION || '1m', target: Number(__ENV.VUS || 500) },
+        { duration: '15s', target: 0 },
+      ],
+    },
+  },
+  thresholds: {
+    // The stream requests end with their timeout, only the other requests count for failures and latency
+    'http_req_failed{type:api}': ['rate<0.01'],
+    'http_req_duration{type:api}': ['p(99)<30000'],
+  },
+  summaryTrendStats: ['avg', 'med', 'p(90)', 'p(95)', 'p(99)', 'max'],
+};
+
+function params(user, type) {
+  return { headers: headers(user), tags: { type } };
+}
+
+function headers(user) {
+  return {
+    'Content-Type': 'application/json',
+    Authorization: `Basic ${encoding.b64encode(`${user}:password`)}`,
+  };
+}
+
+export default async function () {
+  const user = USERS[__VU % USERS.length];
+
+  const init = http.get(`${BASE_URL}/chat/init`, params(user, 'api'));
+  check(init, { 'session initialised': (r) => r.status === 200 });
+
+  // Keeps a stream open for a short while, like a browser tab that listens for the answer
+  const stream = http.asyncRequest('GET', `${BASE_URL}/chat/stream`, null,
+    { ...params(user, 'stream'), timeout: '5s' });
+
+  const message = http.post(
+    `${BASE_URL}/chat/message`,
+    JSON.stringify({ message: 'Which programming languages does Jettro write about?' }),
+    params(user, 'api'),
+  );
+  check(message, { 'message accepted': (r) => r.status === 200 });
+
+  // The iteration ends when the stream closes, so its duration and the request timings cover the stream as well
+  await stream;
+
+  sleep(1 + Math.random() * 2);
+}
+
+export function handleSummary(data) {
+  const duration = data.metrics['http_req_duration{type:api}'].values;
+  const line = `| ${LABEL} | ${data.metrics.http_reqs.values.rate.toFixed(1)} | ${duration.med.toFixed(0)} | `
+    + `${duration['p(95)'].toFixed(0)} | ${duration['p(99)'].toFixed(0)} | `
+    + `${(data.metrics['http_req_failed{type:api}'].values.rate * 100).toFixed(2)}% |`;
+  return {
+    stdout: `${textSummary(data, { indent: ' ', enableColors: true })}\n\n${line}\n`,
+    [`loadtest/results/${LABEL}.json`]: JSON.stringify(data, null, 2),
+  };
+}